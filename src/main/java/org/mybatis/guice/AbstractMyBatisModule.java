@@ -24,20 +24,47 @@ import static org.mybatis.guice.Preconditions.checkArgument;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Key;
+import com.google.inject.PrivateBinder;
 import com.google.inject.Scopes;
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.TypeLiteral;
 import com.google.inject.matcher.Matcher;
+import com.google.inject.multibindings.Multibinder;
 
+import jakarta.inject.Qualifier;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
 import java.util.Set;
 
+import org.aopalliance.intercept.MethodInterceptor;
 import org.apache.ibatis.io.ResolverUtil;
 import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionManager;
 import org.mybatis.guice.mappers.MapperProvider;
+import org.mybatis.guice.session.SqlSessionContext;
 import org.mybatis.guice.session.SqlSessionManagerProvider;
+import org.mybatis.guice.session.UnitOfWork;
+import org.mybatis.guice.session.UnitOfWorkMethodInterceptor;
 import org.mybatis.guice.transactional.Transactional;
 import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
 
+/**
+ * Base of the MyBatis modules.
+ * <p>
+ * A module created with a binding annotation configures a <em>qualified environment</em>: all of its bindings, the
+ * ones made in {@code initialize()} included, are kept in a private environment, and the {@link SqlSessionManager},
+ * {@link SqlSession}, {@link SqlSessionFactory}, {@link SqlSessionContext} and mappers are exposed annotated with the
+ * qualifier. The {@link Transactional} and {@link UnitOfWork} interceptors of a qualified environment apply to the
+ * methods, or classes, annotated with the qualifier as well, e.g. {@code @Transactional @Named("db1")}. Several
+ * qualified environments, and at most one unqualified one, can be installed in the same injector: the interceptors of
+ * the unqualified environment leave out the methods and classes carrying the qualifier of a qualified environment
+ * installed in the same injector, contributed to the {@code @Named("mybatis.interceptors.excluded")} set of matchers.
+ */
 abstract class AbstractMyBatisModule extends AbstractModule {
 
   protected static final Matcher<Method> DECLARED_BY_OBJECT = method -> method.getDeclaringClass() == Object.class;
@@ -48,6 +75,38 @@ abstract class AbstractMyBatisModule extends AbstractModule {
 
   private ClassLoader driverClassLoader = getDefaultClassLoader();
 
+  /**
+   * The qualifier of the environment, null for an unqualified environment or when qualified by type.
+   */
+  private final Annotation environmentAnnotation;
+
+  /**
+   * The qualifier type of the environment, null for an unqualified environment or when qualified by instance.
+   */
+  private final Class<? extends Annotation> environmentAnnotationType;
+
+  /**
+   * The private binder of a qualified environment, only set while configuring.
+   */
+  private PrivateBinder privateBinder;
+
+  AbstractMyBatisModule() {
+    this.environmentAnnotation = null;
+    this.environmentAnnotationType = null;
+  }
+
+  AbstractMyBatisModule(Annotation environmentAnnotation) {
+    checkArgument(environmentAnnotation != null, "Parameter 'environmentAnnotation' must be not null");
+    this.environmentAnnotation = environmentAnnotation;
+    this.environmentAnnotationType = null;
+  }
+
+  AbstractMyBatisModule(Class<? extends Annotation> environmentAnnotationType) {
+    checkArgument(environmentAnnotationType != null, "Parameter 'environmentAnnotationType' must be not null");
+    this.environmentAnnotation = null;
+    this.environmentAnnotationType = environmentAnnotationType;
+  }
+
   /**
    * Return a set of all classes contained in the given package.
    *
@@ -78,36 +137,152 @@ abstract class AbstractMyBatisModule extends AbstractModule {
 
   @Override
   protected final void configure() {
+    if (isQualified()) {
+      // the interceptors of the unqualified environment leave the methods and classes of this one out
+      Multibinder.newSetBinder(super.binder(), new TypeLiteral<Matcher<AnnotatedElement>>() {},
+          named(UnqualifiedMethodInterceptor.EXCLUDED)).permitDuplicates().addBinding()
+          .toInstance(new EnvironmentQualifierMatcher());
+      privateBinder = super.binder().newPrivateBinder();
+    }
     try {
       // sql session manager
       bind(SqlSessionManager.class).toProvider(SqlSessionManagerProvider.class).in(Scopes.SINGLETON);
       bind(SqlSession.class).to(SqlSessionManager.class).in(Scopes.SINGLETON);
+      bind(SqlSessionContext.class).in(Scopes.SINGLETON);
+
+      // unit of work interceptor, bound before the transactional ones to wrap them
+      UnitOfWorkMethodInterceptor unitOfWorkInterceptor = new UnitOfWorkMethodInterceptor();
+      requestInjection(unitOfWorkInterceptor);
+      bindAnnotationInterceptor(UnitOfWork.class, unitOfWorkInterceptor);
 
       internalConfigure();
 
       bindTransactionInterceptors();
 
       bind(ClassLoader.class).annotatedWith(named("JDBC.driverClassLoader")).toInstance(driverClassLoader);
+
+      exposeQualified(SqlSessionManager.class);
+      exposeQualified(SqlSession.class);
+      exposeQualified(SqlSessionFactory.class);
+      exposeQualified(SqlSessionContext.class);
     } finally {
+      privateBinder = null;
       resourcesClassLoader = getDefaultClassLoader();
       driverClassLoader = getDefaultClassLoader();
     }
   }
 
+  /**
+   * Returns the private binder while configuring a qualified environment, the module binder otherwise.
+   */
+  @Override
+  protected Binder binder() {
+    return privateBinder != null ? privateBinder : super.binder();
+  }
+
+  /**
+   * Checks if this module configures a qualified environment.
+   *
+   * @return true, if the environment is qualified by a binding annotation
+   */
+  final boolean isQualified() {
+    return environmentAnnotation != null || environmentAnnotationType != null;
+  }
+
+  /**
+   * Gets the key of the given type annotated with the environment qualifier.
+   *
+   * @param <T>
+   *          the generic type
+   * @param type
+   *          the bound type
+   *
+   * @return the qualified key
+   */
+  final <T> Key<T> qualifiedKey(Class<T> type) {
+    return environmentAnnotation != null ? Key.get(type, environmentAnnotation)
+        : Key.get(type, environmentAnnotationType);
+  }
+
+  /**
+   * Exposes the given type annotated with the environment qualifier, does nothing for an unqualified environment.
+   *
+   * @param <T>
+   *          the generic type
+   * @param type
+   *          the type bound in the private environment
+   */
+  final <T> void exposeQualified(Class<T> type) {
+    if (privateBinder != null) {
+      Key<T> key = qualifiedKey(type);
+      privateBinder.bind(key).to(type);
+      privateBinder.expose(key);
+    }
+  }
+
+  /**
+   * Binds the interceptors to the methods annotated with the given annotation, or declared by a class annotated with
+   * it. In a qualified environment they are bound in the enclosing environment too, for the methods or classes that
+   * carry the environment qualifier.
+   *
+   * @param annotationType
+   *          the annotation type
+   * @param interceptors
+   *          the interceptors
+   */
+  final void bindAnnotationInterceptor(Class<? extends Annotation> annotationType, MethodInterceptor... interceptors) {
+    // the methods and classes claimed by a qualified environment are left out when invoked
+    MethodInterceptor[] unqualifiedInterceptors = new MethodInterceptor[interceptors.length];
+    for (int i = 0; i < interceptors.length; i++) {
+      unqualifiedInterceptors[i] = new UnqualifiedMethodInterceptor(interceptors[i]);
+      requestInjection(unqualifiedInterceptors[i]);
+    }
+    bindInterceptor(any(), not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(annotationType)),
+        unqualifiedInterceptors);
+    // Intercept classes annotated with the annotation, but avoid "double"
+    // interception when a method is also annotated inside an annotated
+    // class.
+    bindInterceptor(annotatedWith(annotationType),
+        not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(not(annotatedWith(annotationType))), unqualifiedInterceptors);
+
+    if (privateBinder != null) {
+      Matcher<AnnotatedElement> qualified = new EnvironmentQualifierMatcher();
+      Binder parentBinder = super.binder();
+      parentBinder.bindInterceptor(any(),
+          not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(annotationType)).and(qualified), interceptors);
+      parentBinder.bindInterceptor(qualified,
+          not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(annotationType)).and(not(qualified)),
+          interceptors);
+      parentBinder.bindInterceptor(annotatedWith(annotationType).and(qualified),
+          not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(not(annotatedWith(annotationType))), interceptors);
+    }
+  }
+
   /**
    * bind transactional interceptors.
    */
   protected void bindTransactionInterceptors() {
     // transactional interceptor
     TransactionalMethodInterceptor interceptor = new TransactionalMethodInterceptor();
-    requestInjection(interceptor);
-    bindInterceptor(any(), not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(Transactional.class)),
-        interceptor);
-    // Intercept classes annotated with Transactional, but avoid "double"
-    // interception when a mathod is also annotated inside an annotated
-    // class.
-    bindInterceptor(annotatedWith(Transactional.class),
-        not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(not(annotatedWith(Transactional.class))), interceptor);
+    bindTransactionalInterceptor(interceptor);
+    bindAnnotationInterceptor(Transactional.class, interceptor);
+  }
+
+  /**
+   * Requests the injection of the transactional interceptor of the environment. A qualified environment exposes it
+   * annotated with the qualifier, e.g. for the shards of the sharding module.
+   *
+   * @param interceptor
+   *          the transactional interceptor
+   */
+  final void bindTransactionalInterceptor(TransactionalMethodInterceptor interceptor) {
+    if (privateBinder != null) {
+      Key<TransactionalMethodInterceptor> key = qualifiedKey(TransactionalMethodInterceptor.class);
+      privateBinder.bind(key).toInstance(interceptor);
+      privateBinder.expose(key);
+    } else {
+      requestInjection(interceptor);
+    }
   }
 
   /**
@@ -120,6 +295,7 @@ abstract class AbstractMyBatisModule extends AbstractModule {
    */
   final <T> void bindMapper(Class<T> mapperType) {
     bind(mapperType).toProvider(guicify(new MapperProvider<>(mapperType))).in(Scopes.SINGLETON);
+    exposeQualified(mapperType);
   }
 
   /**
@@ -178,4 +354,32 @@ abstract class AbstractMyBatisModule extends AbstractModule {
    */
   protected abstract void initialize();
 
+  private static boolean isQualifier(Class<? extends Annotation> annotationType) {
+    return annotationType.isAnnotationPresent(BindingAnnotation.class)
+        || annotationType.isAnnotationPresent(Qualifier.class);
+  }
+
+  /**
+   * Matches the elements annotated with the environment qualifier; a {@code jakarta.inject.Named} and a
+   * {@code com.google.inject.name.Named} with the same value are equivalent.
+   */
+  private final class EnvironmentQualifierMatcher extends AbstractMatcher<AnnotatedElement> {
+
+    @Override
+    public boolean matches(AnnotatedElement element) {
+      for (Annotation annotation : element.getAnnotations()) {
+        Class<? extends Annotation> annotationType = annotation.annotationType();
+        if (!isQualifier(annotationType)) {
+          continue;
+        }
+        if (environmentAnnotationType != null ? annotationType == environmentAnnotationType
+            : Key.get(SqlSessionManager.class, annotation).equals(qualifiedKey(SqlSessionManager.class))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+  }
+
 }
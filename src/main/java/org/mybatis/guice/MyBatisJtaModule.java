@@ -15,9 +15,7 @@
  */
 package org.mybatis.guice;
 
-import static com.google.inject.matcher.Matchers.annotatedWith;
-import static com.google.inject.matcher.Matchers.any;
-import static com.google.inject.matcher.Matchers.not;
+import static com.google.inject.name.Names.named;
 import static org.mybatis.guice.Preconditions.checkArgument;
 
 import jakarta.inject.Provider;
@@ -60,22 +58,18 @@ public abstract class MyBatisJtaModule extends MyBatisModule {
 
       // transactional interceptor
       TransactionalMethodInterceptor interceptor = new TransactionalMethodInterceptor();
-      requestInjection(interceptor);
+      bindTransactionalInterceptor(interceptor);
 
-      // jta transactional interceptor
+      // jta transactional interceptor, running the transactional interceptor in the same frame
       TxTransactionalMethodInterceptor interceptorTx = new TxTransactionalMethodInterceptor();
+      interceptorTx.setLocalInterceptor(interceptor);
       requestInjection(interceptorTx);
       bind(XAResource.class).toProvider(xaResourceProvider);
 
       bind(TransactionManager.class).toInstance(manager);
 
-      bindInterceptor(any(), not(DECLARED_BY_OBJECT).and(annotatedWith(Transactional.class)), interceptorTx,
-          interceptor);
-      // Intercept classes annotated with Transactional, but avoid "double"
-      // interception when a method is also annotated inside an annotated
-      // class.
-      bindInterceptor(annotatedWith(Transactional.class),
-          not(DECLARED_BY_OBJECT).and(not(annotatedWith(Transactional.class))), interceptorTx, interceptor);
+      // the methods and classes claimed by a qualified environment are left out
+      bindAnnotationInterceptor(Transactional.class, interceptorTx);
     }
   }
 
@@ -99,6 +93,19 @@ public abstract class MyBatisJtaModule extends MyBatisModule {
     this.xaResourceProvider = xaResourceProvider;
   }
 
+  /**
+   * Enables the one-phase commit optimization: the SqlSessionManager is bound to the JTA transactions through a
+   * {@code Synchronization} instead of being enlisted as an XAResource, so the TransactionManager can commit the
+   * transactions touching a single database in one phase. Requires a connection pool enlisting its connections in the
+   * JTA transaction.
+   *
+   * @param onePhaseCommit
+   *          true to enable the one-phase commit optimization
+   */
+  protected final void useOnePhaseCommit(boolean onePhaseCommit) {
+    bindConstant().annotatedWith(named("mybatis.jta.onePhaseCommit")).to(onePhaseCommit);
+  }
+
   protected static class ProviderImpl<T> implements Provider<T> {
     private T wrapper;
 
@@ -25,6 +25,7 @@ import com.google.inject.TypeLiteral;
 
 import jakarta.inject.Provider;
 
+import java.lang.annotation.Annotation;
 import java.util.Collection;
 
 import javax.sql.DataSource;
@@ -101,6 +102,36 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
 
   private Class<? extends Provider<? extends Configuration>> configurationProviderType = ConfigurationProvider.class;
 
+  /**
+   * Creates a module for the unqualified MyBatis environment.
+   */
+  protected MyBatisModule() {
+  }
+
+  /**
+   * Creates a module for a MyBatis environment qualified by the given binding annotation.
+   *
+   * @param environmentAnnotation
+   *          the binding annotation, e.g. {@code Names.named("db1")}
+   *
+   * @since 4.1.2
+   */
+  protected MyBatisModule(Annotation environmentAnnotation) {
+    super(environmentAnnotation);
+  }
+
+  /**
+   * Creates a module for a MyBatis environment qualified by the given binding annotation type.
+   *
+   * @param environmentAnnotationType
+   *          the binding annotation type
+   *
+   * @since 4.1.2
+   */
+  protected MyBatisModule(Class<? extends Annotation> environmentAnnotationType) {
+    super(environmentAnnotationType);
+  }
+
   @Override
   final void internalConfigure() {
     try {
@@ -116,6 +147,7 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
     // replaceable bindings.
     bind(Configuration.class).toProvider(configurationProviderType).in(Scopes.SINGLETON);
     bind(SqlSessionFactory.class).toProvider(sqlSessionFactoryProviderType);
+    exposeQualified(Configuration.class);
 
     // parametric bindings
     bind(ObjectFactory.class).to(objectFactoryType).in(Scopes.SINGLETON);
@@ -137,6 +169,17 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
     bindConstant().annotatedWith(named("mybatis.environment.id")).to(environmentId);
   }
 
+  /**
+   * Binds the mappers to direct-dispatch proxies, running the calls in the managed SqlSession of the current thread
+   * without going through the SqlSessionManager proxy.
+   *
+   * @param directDispatch
+   *          true to bind the mappers to direct-dispatch proxies
+   */
+  protected final void mapperDirectDispatch(boolean directDispatch) {
+    bindConstant().annotatedWith(named("mybatis.mapper.directDispatch")).to(directDispatch);
+  }
+
   /**
    * Lazy loading enabled.
    *
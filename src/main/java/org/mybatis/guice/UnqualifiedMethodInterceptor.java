@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice;
+
+import com.google.inject.matcher.Matcher;
+
+import jakarta.inject.Named;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Runs an interceptor of the unqualified environment, unless the intercepted method, or its declaring class, is claimed
+ * by another environment installed in the same injector, e.g. annotated with the qualifier of a qualified environment,
+ * or {@code @Sharded}.
+ * <p>
+ * The claimed elements are the ones matched by the {@code @Named("mybatis.interceptors.excluded")} set of matchers,
+ * contributed by the qualified environments and the sharding module: without any of them, every method is
+ * intercepted.
+ */
+final class UnqualifiedMethodInterceptor implements MethodInterceptor {
+
+  /**
+   * The name of the set of matchers of the elements the unqualified interceptors leave out.
+   */
+  static final String EXCLUDED = "mybatis.interceptors.excluded";
+
+  private final MethodInterceptor interceptor;
+
+  @com.google.inject.Inject(optional = true)
+  @Named(EXCLUDED)
+  private Set<Matcher<AnnotatedElement>> excluded;
+
+  /**
+   * Caches, per intercepted method, whether it is left out.
+   */
+  private final ConcurrentMap<Method, Boolean> excludedMethods = new ConcurrentHashMap<>();
+
+  UnqualifiedMethodInterceptor(MethodInterceptor interceptor) {
+    this.interceptor = interceptor;
+  }
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    if (excluded != null && isExcluded(invocation.getMethod())) {
+      return invocation.proceed();
+    }
+    return interceptor.invoke(invocation);
+  }
+
+  private boolean isExcluded(Method method) {
+    Boolean exclude = excludedMethods.get(method);
+    if (exclude == null) {
+      exclude = excludedMethods.computeIfAbsent(method, this::computeExcluded);
+    }
+    return exclude;
+  }
+
+  private Boolean computeExcluded(Method method) {
+    for (Matcher<AnnotatedElement> matcher : excluded) {
+      if (matcher.matches(method) || matcher.matches(method.getDeclaringClass())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
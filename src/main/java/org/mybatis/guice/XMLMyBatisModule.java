@@ -20,6 +20,7 @@ import static org.mybatis.guice.Preconditions.checkArgument;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.lang.annotation.Annotation;
 import java.util.Collection;
 import java.util.Properties;
 
@@ -45,6 +46,36 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
 
   private Properties properties = new Properties();
 
+  /**
+   * Creates a module for the unqualified MyBatis environment.
+   */
+  protected XMLMyBatisModule() {
+  }
+
+  /**
+   * Creates a module for a MyBatis environment qualified by the given binding annotation.
+   *
+   * @param environmentAnnotation
+   *          the binding annotation, e.g. {@code Names.named("db1")}
+   *
+   * @since 4.1.2
+   */
+  protected XMLMyBatisModule(Annotation environmentAnnotation) {
+    super(environmentAnnotation);
+  }
+
+  /**
+   * Creates a module for a MyBatis environment qualified by the given binding annotation type.
+   *
+   * @param environmentAnnotationType
+   *          the binding annotation type
+   *
+   * @since 4.1.2
+   */
+  protected XMLMyBatisModule(Class<? extends Annotation> environmentAnnotationType) {
+    super(environmentAnnotationType);
+  }
+
   /**
    * Set the MyBatis configuration class path resource.
    *
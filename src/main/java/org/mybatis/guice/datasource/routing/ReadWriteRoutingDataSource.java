@@ -0,0 +1,271 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.mybatis.guice.transactional.TransactionContext;
+import org.mybatis.guice.transactional.Transactional;
+
+/**
+ * A DataSource routing the connections requested by a read only unit of work, see {@link Transactional#readOnly()},
+ * to a replica and all the other ones to the primary.
+ * <p>
+ * A replica failing to hand out a connection is evicted for the configured period, and the next one is tried; when no
+ * replica is available the primary is used. Connections are requested lazily by the managed SqlSession, so the
+ * {@link TransactionContext} of the unit of work is in place when the routing decision is made.
+ */
+public final class ReadWriteRoutingDataSource implements DataSource {
+
+  private static final Log log = LogFactory.getLog(ReadWriteRoutingDataSource.class);
+
+  /**
+   * The default period a failing replica is evicted for, in milliseconds.
+   */
+  public static final long DEFAULT_EVICTION_MILLIS = 30000;
+
+  private final DataSource primary;
+
+  private final ReplicaState[] replicas;
+
+  private final AtomicInteger nextReplica = new AtomicInteger();
+
+  private volatile ReplicaSelection replicaSelection = ReplicaSelection.ROUND_ROBIN;
+
+  private volatile long evictionNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_EVICTION_MILLIS);
+
+  /**
+   * Creates a new routing DataSource.
+   *
+   * @param primary
+   *          the DataSource writes are routed to
+   * @param replicas
+   *          the DataSources read only units of work are routed to
+   */
+  public ReadWriteRoutingDataSource(DataSource primary, List<? extends DataSource> replicas) {
+    if (primary == null) {
+      throw new IllegalArgumentException("Parameter 'primary' must be not null");
+    }
+    if (replicas == null) {
+      throw new IllegalArgumentException("Parameter 'replicas' must be not null");
+    }
+    this.primary = primary;
+    this.replicas = new ReplicaState[replicas.size()];
+    for (int i = 0; i < this.replicas.length; i++) {
+      this.replicas[i] = new ReplicaState(replicas.get(i));
+    }
+  }
+
+  /**
+   * Sets the policy used to pick a replica, {@link ReplicaSelection#ROUND_ROBIN} by default.
+   *
+   * @param replicaSelection
+   *          the replica selection policy
+   */
+  public void setReplicaSelection(ReplicaSelection replicaSelection) {
+    if (replicaSelection == null) {
+      throw new IllegalArgumentException("Parameter 'replicaSelection' must be not null");
+    }
+    this.replicaSelection = replicaSelection;
+  }
+
+  /**
+   * Sets the period a replica failing to hand out a connection is evicted for.
+   *
+   * @param evictionMillis
+   *          the eviction period in milliseconds
+   */
+  public void setEvictionMillis(long evictionMillis) {
+    if (evictionMillis < 0) {
+      throw new IllegalArgumentException("Parameter 'evictionMillis' must not be negative");
+    }
+    this.evictionNanos = TimeUnit.MILLISECONDS.toNanos(evictionMillis);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (replicas.length > 0 && TransactionContext.isCurrentReadOnly()) {
+      return getReplicaConnection(null, null);
+    }
+    return primary.getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    if (replicas.length > 0 && TransactionContext.isCurrentReadOnly()) {
+      return getReplicaConnection(username, password);
+    }
+    return primary.getConnection(username, password);
+  }
+
+  private Connection getReplicaConnection(String username, String password) throws SQLException {
+    ReplicaSelection selection = replicaSelection;
+    long now = System.nanoTime();
+    int first = selection == ReplicaSelection.LEAST_OUTSTANDING ? leastOutstanding(now)
+        : Math.floorMod(nextReplica.getAndIncrement(), replicas.length);
+
+    for (int i = 0; i < replicas.length; i++) {
+      ReplicaState replica = replicas[(first + i) % replicas.length];
+      if (!replica.isAvailable(now)) {
+        continue;
+      }
+
+      try {
+        Connection connection = username == null ? replica.dataSource.getConnection()
+            : replica.dataSource.getConnection(username, password);
+        replica.evictedUntil = 0;
+        return selection == ReplicaSelection.LEAST_OUTSTANDING ? replica.track(connection) : connection;
+      } catch (SQLException e) {
+        replica.evictedUntil = now + evictionNanos;
+        log.warn("Replica " + replica.dataSource + " evicted, failed to get a connection: " + e.getMessage());
+      }
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug("No replica available, routing read only connection to the primary");
+    }
+    return username == null ? primary.getConnection() : primary.getConnection(username, password);
+  }
+
+  private int leastOutstanding(long now) {
+    int least = 0;
+    int leastOutstanding = Integer.MAX_VALUE;
+    for (int i = 0; i < replicas.length; i++) {
+      int outstanding = replicas[i].outstanding.get();
+      if (outstanding < leastOutstanding && replicas[i].isAvailable(now)) {
+        least = i;
+        leastOutstanding = outstanding;
+      }
+    }
+    return least;
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return primary.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    primary.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    primary.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return primary.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return primary.getParentLogger();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    return primary.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || primary.isWrapperFor(iface);
+  }
+
+  private static final class ReplicaState {
+
+    final DataSource dataSource;
+
+    final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * The System.nanoTime() the replica is evicted until, 0 when healthy.
+     */
+    volatile long evictedUntil;
+
+    ReplicaState(DataSource dataSource) {
+      if (dataSource == null) {
+        throw new IllegalArgumentException("Parameter 'replicas' must not contain null");
+      }
+      this.dataSource = dataSource;
+    }
+
+    boolean isAvailable(long now) {
+      long until = evictedUntil;
+      return until == 0 || now - until >= 0;
+    }
+
+    Connection track(Connection connection) {
+      outstanding.incrementAndGet();
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+          new OutstandingConnection(connection, outstanding));
+    }
+
+  }
+
+  /**
+   * Decrements the outstanding connections of a replica the first time the connection is closed.
+   */
+  private static final class OutstandingConnection implements InvocationHandler {
+
+    private final Connection connection;
+
+    private final AtomicInteger outstanding;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    OutstandingConnection(Connection connection, AtomicInteger outstanding) {
+      this.connection = connection;
+      this.outstanding = outstanding;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if ("close".equals(method.getName()) && method.getParameterCount() == 0 && closed.compareAndSet(false, true)) {
+        outstanding.decrementAndGet();
+      }
+      try {
+        return method.invoke(connection, args);
+      } catch (InvocationTargetException e) {
+        throw e.getTargetException();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Provider;
+
+import java.util.ArrayList;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+/**
+ * Provides a {@link ReadWriteRoutingDataSource} over the {@link Primary} DataSource and the {@link Replica} ones, bound
+ * through a {@code Multibinder.newSetBinder(binder(), DataSource.class, Replica.class)}.
+ */
+public final class ReadWriteRoutingDataSourceProvider implements Provider<DataSource> {
+
+  /**
+   * The ReadWriteRoutingDataSource reference.
+   */
+  private final ReadWriteRoutingDataSource dataSource;
+
+  /**
+   * Creates a new ReadWriteRoutingDataSource using the needed parameter.
+   *
+   * @param primary
+   *          the DataSource writes are routed to
+   * @param replicas
+   *          the DataSources read only units of work are routed to
+   */
+  @Inject
+  public ReadWriteRoutingDataSourceProvider(@Primary final DataSource primary,
+      @Replica final Set<DataSource> replicas) {
+    dataSource = new ReadWriteRoutingDataSource(primary, new ArrayList<>(replicas));
+  }
+
+  /**
+   * Sets the replica selection policy.
+   *
+   * @param replicaSelection
+   *          the new replica selection policy
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setReplicaSelection(@Named("mybatis.routing.replicaSelection") final ReplicaSelection replicaSelection) {
+    dataSource.setReplicaSelection(replicaSelection);
+  }
+
+  /**
+   * Sets the period a failing replica is evicted for.
+   *
+   * @param evictionMillis
+   *          the new eviction period in milliseconds
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setEvictionMillis(@Named("mybatis.routing.evictionMillis") final long evictionMillis) {
+    dataSource.setEvictionMillis(evictionMillis);
+  }
+
+  @Override
+  public DataSource get() {
+    return dataSource;
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+/**
+ * The policies used to pick the replica a read only unit of work is routed to.
+ */
+public enum ReplicaSelection {
+
+  /**
+   * Replicas are picked in turn.
+   */
+  ROUND_ROBIN,
+
+  /**
+   * The replica with the fewest connections handed out and not yet closed is picked.
+   */
+  LEAST_OUTSTANDING
+
+}
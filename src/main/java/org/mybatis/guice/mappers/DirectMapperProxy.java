@@ -0,0 +1,152 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.SqlSessionContext;
+
+/**
+ * Mapper proxy dispatching the calls directly to the managed SqlSession of the current thread.
+ * <p>
+ * The proxies returned by {@link SqlSessionManager#getMapper(Class)} go through the SqlSessionManager proxy, then the
+ * mapper registry and the MyBatis mapper proxy on each call. This one resolves the {@link MapperMethod} once per
+ * method, and reads the managed SqlSession with a single thread local lookup. Outside a managed session, each call
+ * runs in its own auto committed SqlSession, as with the SqlSessionManager.
+ *
+ * @param <T>
+ *          the mapper type
+ */
+final class DirectMapperProxy<T> implements InvocationHandler {
+
+  private final Class<T> mapperType;
+
+  private final SqlSessionManager sqlSessionManager;
+
+  private final SqlSessionContext sqlSessionContext;
+
+  private final Configuration configuration;
+
+  private final ConcurrentMap<Method, MapperMethod> mapperMethods = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<Method, MethodHandle> defaultMethods = new ConcurrentHashMap<>();
+
+  private DirectMapperProxy(Class<T> mapperType, SqlSessionManager sqlSessionManager) {
+    this.mapperType = mapperType;
+    this.sqlSessionManager = sqlSessionManager;
+    this.sqlSessionContext = SqlSessionContext.of(sqlSessionManager);
+    this.configuration = sqlSessionManager.getConfiguration();
+  }
+
+  /**
+   * Creates a direct-dispatch proxy of the given mapper.
+   *
+   * @param <T>
+   *          the mapper type
+   * @param mapperType
+   *          the mapper type
+   * @param sqlSessionManager
+   *          the SqlSessionManager managing the SqlSessions
+   *
+   * @return the mapper proxy
+   *
+   * @throws BindingException
+   *           if the mapper is not registered in the configuration
+   */
+  static <T> T newInstance(Class<T> mapperType, SqlSessionManager sqlSessionManager) {
+    if (!sqlSessionManager.getConfiguration().hasMapper(mapperType)) {
+      throw new BindingException("Type " + mapperType + " is not known to the MapperRegistry.");
+    }
+
+    return mapperType.cast(Proxy.newProxyInstance(mapperType.getClassLoader(), new Class<?>[] { mapperType },
+        new DirectMapperProxy<>(mapperType, sqlSessionManager)));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (Object.class.equals(method.getDeclaringClass())) {
+      try {
+        return method.invoke(this, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    if (method.isDefault()) {
+      return getDefaultMethod(method).bindTo(proxy).invokeWithArguments(args);
+    }
+
+    MapperMethod mapperMethod = getMapperMethod(method);
+
+    SqlSession sqlSession = sqlSessionContext.current();
+    if (sqlSession != null) {
+      return mapperMethod.execute(sqlSession, args);
+    }
+
+    try (SqlSession autoSqlSession = sqlSessionManager.openSession()) {
+      try {
+        Object result = mapperMethod.execute(autoSqlSession, args);
+        autoSqlSession.commit();
+        return result;
+      } catch (Throwable t) {
+        autoSqlSession.rollback();
+        throw t;
+      }
+    }
+  }
+
+  private MapperMethod getMapperMethod(Method method) {
+    MapperMethod mapperMethod = mapperMethods.get(method);
+    if (mapperMethod == null) {
+      mapperMethod = mapperMethods.computeIfAbsent(method, m -> new MapperMethod(mapperType, m, configuration));
+    }
+    return mapperMethod;
+  }
+
+  private MethodHandle getDefaultMethod(Method method) {
+    MethodHandle methodHandle = defaultMethods.get(method);
+    if (methodHandle == null) {
+      methodHandle = defaultMethods.computeIfAbsent(method, m -> {
+        Class<?> declaringClass = m.getDeclaringClass();
+        try {
+          return MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup()).unreflectSpecial(m,
+              declaringClass);
+        } catch (IllegalAccessException e) {
+          throw new BindingException("Cannot invoke default method " + m + ". Cause: " + e, e);
+        }
+      });
+    }
+    return methodHandle;
+  }
+
+  @Override
+  public String toString() {
+    return "DirectMapperProxy[" + mapperType.getName() + "]";
+  }
+
+}
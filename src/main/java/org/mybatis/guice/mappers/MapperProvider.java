@@ -16,6 +16,7 @@
 package org.mybatis.guice.mappers;
 
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Provider;
 
 import java.util.Objects;
@@ -24,6 +25,10 @@ import org.apache.ibatis.session.SqlSessionManager;
 
 /**
  * A generic MyBatis mapper provider.
+ * <p>
+ * When {@code @Named("mybatis.mapper.directDispatch")} is bound to true, the provided mappers are direct-dispatch
+ * proxies running the calls in the managed SqlSession of the current thread, without going through the
+ * SqlSessionManager proxy.
  */
 public final class MapperProvider<T> implements Provider<T> {
 
@@ -32,6 +37,10 @@ public final class MapperProvider<T> implements Provider<T> {
   @Inject
   private SqlSessionManager sqlSessionManager;
 
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.mapper.directDispatch")
+  private boolean directDispatch;
+
   public MapperProvider(Class<T> mapperType) {
     this.mapperType = mapperType;
   }
@@ -40,8 +49,15 @@ public final class MapperProvider<T> implements Provider<T> {
     this.sqlSessionManager = sqlSessionManager;
   }
 
+  public void setDirectDispatch(boolean directDispatch) {
+    this.directDispatch = directDispatch;
+  }
+
   @Override
   public T get() {
+    if (directDispatch) {
+      return DirectMapperProxy.newInstance(mapperType, sqlSessionManager);
+    }
     return this.sqlSessionManager.getMapper(mapperType);
   }
 
@@ -0,0 +1,423 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import jakarta.inject.Inject;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * Explicit access to the managed SqlSession that a {@link SqlSessionManager} binds to the current thread.
+ * <p>
+ * The SqlSessionManager keeps the managed SqlSession in a thread local, so work handed to an executor, a
+ * {@code StructuredTaskScope} or any other thread does not see it. Wrap such tasks with:
+ * <ul>
+ * <li>{@link #propagate(Runnable)}, to share the SqlSession of the submitting thread: the tasks sharing a SqlSession
+ * are serialized, and the submitting thread must not use it until they are completed, i.e. by joining the scope;</li>
+ * <li>{@link #fork(Runnable)}, to run the task in a managed SqlSession of its own, committed when the task completes
+ * normally and rolled back otherwise.</li>
+ * </ul>
+ * <p>
+ * Outside of a managed SqlSession, the SqlSessionManager opens a SqlSession, and checks out a connection, per mapper
+ * call. {@link #unitOfWork(Runnable)} runs a task in a unit of work instead: a SqlSession opened on the first
+ * statement, committed after each statement and closed when the task completes.
+ * <p>
+ * MyBatis exposes no supported API to unbind or rebind the managed SqlSession of a SqlSessionManager. This class is a
+ * fallback relying on an implementation detail: it reads the private {@code localSqlSession} thread local of the
+ * SqlSessionManager by reflection, once per SqlSessionManager, and fails with an {@link IllegalStateException} when that
+ * field is missing or not accessible, i.e. with a MyBatis version storing it differently or under a module system
+ * denying deep reflection on {@code org.apache.ibatis.session}.
+ */
+public final class SqlSessionContext {
+
+  private static final Field LOCAL_SQL_SESSION_FIELD = getLocalSqlSessionField();
+
+  /**
+   * The thread locals of the SqlSessionManagers, resolved once per SqlSessionManager.
+   */
+  private static final Map<SqlSessionManager, ThreadLocal<SqlSession>> LOCAL_SQL_SESSIONS = Collections
+      .synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * The SqlSessionManagers with a unit of work bound to the current thread, null if none: checking for a unit of work
+   * does not need the SqlSessionManager thread local.
+   */
+  private static final ThreadLocal<Set<SqlSessionManager>> UNITS_OF_WORK = new ThreadLocal<>();
+
+  /**
+   * The locks serializing the tasks sharing the same SqlSession.
+   */
+  private static final Map<SqlSession, Lock> SHARED_SQL_SESSION_LOCKS = Collections
+      .synchronizedMap(new WeakHashMap<>());
+
+  private final SqlSessionManager sqlSessionManager;
+
+  private final ThreadLocal<SqlSession> localSqlSession;
+
+  /**
+   * Instantiates a new SqlSession context.
+   *
+   * @param sqlSessionManager
+   *          the SqlSessionManager which manages the SqlSessions
+   *
+   * @throws IllegalStateException
+   *           if the SqlSessionManager thread local cannot be accessed
+   */
+  @Inject
+  public SqlSessionContext(SqlSessionManager sqlSessionManager) {
+    if (sqlSessionManager == null) {
+      throw new IllegalArgumentException("Parameter 'sqlSessionManager' must be not null");
+    }
+    this.sqlSessionManager = sqlSessionManager;
+    this.localSqlSession = LOCAL_SQL_SESSIONS.computeIfAbsent(sqlSessionManager, SqlSessionContext::getLocalSqlSession);
+  }
+
+  /**
+   * Returns the SqlSession context of the given SqlSessionManager.
+   *
+   * @param sqlSessionManager
+   *          the SqlSessionManager which manages the SqlSessions
+   *
+   * @return the SqlSession context
+   *
+   * @throws IllegalStateException
+   *           if the SqlSessionManager thread local cannot be accessed
+   */
+  public static SqlSessionContext of(SqlSessionManager sqlSessionManager) {
+    return new SqlSessionContext(sqlSessionManager);
+  }
+
+  /**
+   * Returns the managed SqlSession bound to the current thread.
+   *
+   * @return the managed SqlSession, null if none is bound to the current thread
+   */
+  public SqlSession current() {
+    return localSqlSession != null ? localSqlSession.get() : null;
+  }
+
+  /**
+   * Unbinds the managed SqlSession from the current thread, without closing it.
+   *
+   * @return the SqlSession unbound, to be passed to {@link #resume(SqlSession)}; null if none was bound
+   */
+  public SqlSession suspend() {
+    if (localSqlSession == null) {
+      return null;
+    }
+
+    SqlSession sqlSession = localSqlSession.get();
+    if (sqlSession != null) {
+      unbind();
+    }
+    return sqlSession;
+  }
+
+  /**
+   * Binds a managed SqlSession to the current thread, replacing the one bound if any.
+   *
+   * @param sqlSession
+   *          the SqlSession returned by {@link #suspend()}, null to leave the current thread without managed SqlSession
+   */
+  public void resume(SqlSession sqlSession) {
+    if (localSqlSession == null) {
+      return;
+    }
+
+    if (sqlSession == null) {
+      unbind();
+    } else {
+      bind(sqlSession);
+    }
+  }
+
+  /**
+   * Wraps a task so that it runs in the managed SqlSession bound to the current thread.
+   *
+   * @param task
+   *          the task
+   *
+   * @return the task sharing the current SqlSession
+   */
+  public Runnable propagate(Runnable task) {
+    Callable<Void> callable = propagate(() -> {
+      task.run();
+      return null;
+    });
+    return () -> call(callable);
+  }
+
+  /**
+   * Wraps a task so that it runs in the managed SqlSession bound to the current thread.
+   *
+   * @param <V>
+   *          the result type
+   * @param task
+   *          the task
+   *
+   * @return the task sharing the current SqlSession
+   */
+  public <V> Callable<V> propagate(Callable<V> task) {
+    SqlSession sqlSession = current();
+    if (sqlSession == null) {
+      return task;
+    }
+
+    Lock lock = SHARED_SQL_SESSION_LOCKS.computeIfAbsent(sqlSession, s -> new ReentrantLock());
+    return () -> {
+      lock.lock();
+      SqlSession previous = suspend();
+      try {
+        resume(sqlSession);
+        return task.call();
+      } finally {
+        resume(previous);
+        lock.unlock();
+      }
+    };
+  }
+
+  /**
+   * Wraps a task so that it runs in a managed SqlSession of its own.
+   *
+   * @param task
+   *          the task
+   *
+   * @return the task running in a new SqlSession
+   */
+  public Runnable fork(Runnable task) {
+    Callable<Void> callable = fork(() -> {
+      task.run();
+      return null;
+    });
+    return () -> call(callable);
+  }
+
+  /**
+   * Wraps a task so that it runs in a managed SqlSession of its own, committed when the task completes normally and
+   * rolled back otherwise.
+   *
+   * @param <V>
+   *          the result type
+   * @param task
+   *          the task
+   *
+   * @return the task running in a new SqlSession
+   */
+  public <V> Callable<V> fork(Callable<V> task) {
+    return () -> {
+      SqlSession previous = suspend();
+      try {
+        sqlSessionManager.startManagedSession();
+        boolean committed = false;
+        try {
+          V result = task.call();
+          sqlSessionManager.commit();
+          committed = true;
+          return result;
+        } finally {
+          try {
+            if (!committed) {
+              sqlSessionManager.rollback();
+            }
+          } finally {
+            sqlSessionManager.close();
+          }
+        }
+      } finally {
+        resume(previous);
+      }
+    };
+  }
+
+  /**
+   * Wraps a task so that it runs as a unit of work.
+   *
+   * @param task
+   *          the task
+   *
+   * @return the task running as a unit of work
+   */
+  public Runnable unitOfWork(Runnable task) {
+    Callable<Void> callable = unitOfWork(() -> {
+      task.run();
+      return null;
+    });
+    return () -> call(callable);
+  }
+
+  /**
+   * Wraps a task so that it runs as a unit of work, sharing one SqlSession between the statements it issues outside of
+   * a managed SqlSession. The task joins the SqlSession already bound to the current thread, if any.
+   *
+   * @param <V>
+   *          the result type
+   * @param task
+   *          the task
+   *
+   * @return the task running as a unit of work
+   */
+  public <V> Callable<V> unitOfWork(Callable<V> task) {
+    return () -> {
+      SqlSession unitOfWork = beginUnitOfWork();
+      if (unitOfWork == null) {
+        return task.call();
+      }
+
+      try {
+        return task.call();
+      } finally {
+        endUnitOfWork(unitOfWork);
+      }
+    };
+  }
+
+  /**
+   * Binds a new unit of work to the current thread, unless a SqlSession is already bound to it. Its SqlSession is only
+   * opened on the first statement.
+   *
+   * @return the unit of work, to be passed to {@link #endUnitOfWork(SqlSession)}; null if a SqlSession was already
+   *         bound to the current thread
+   */
+  public SqlSession beginUnitOfWork() {
+    if (localSqlSession == null || localSqlSession.get() != null) {
+      return null;
+    }
+
+    SqlSession unitOfWork = UnitOfWorkSqlSession.newInstance(sqlSessionManager);
+    bind(unitOfWork);
+    return unitOfWork;
+  }
+
+  /**
+   * Closes the given unit of work and unbinds it from the current thread.
+   *
+   * @param unitOfWork
+   *          the unit of work returned by {@link #beginUnitOfWork()}
+   */
+  public void endUnitOfWork(SqlSession unitOfWork) {
+    try {
+      unitOfWork.close();
+    } finally {
+      SqlSession current = localSqlSession.get();
+      if (current == unitOfWork) {
+        unbind();
+      } else {
+        // the unit of work was replaced without this context, i.e. by SqlSessionManager.startManagedSession()
+        markUnitOfWork(isUnitOfWork(current));
+      }
+    }
+  }
+
+  /**
+   * Checks whether the given SqlSession is a unit of work: the {@code Transactional} methods do not join it.
+   *
+   * @param sqlSession
+   *          the SqlSession
+   *
+   * @return true if the SqlSession is a unit of work
+   */
+  public static boolean isUnitOfWork(SqlSession sqlSession) {
+    return UnitOfWorkSqlSession.isUnitOfWork(sqlSession);
+  }
+
+  /**
+   * Checks whether a unit of work of the given SqlSessionManager is bound to the current thread, without accessing the
+   * SqlSessionManager thread local.
+   *
+   * @param sqlSessionManager
+   *          the SqlSessionManager
+   *
+   * @return true if a unit of work bound by a SqlSessionContext of the SqlSessionManager is in progress
+   */
+  public static boolean hasUnitOfWork(SqlSessionManager sqlSessionManager) {
+    Set<SqlSessionManager> sqlSessionManagers = UNITS_OF_WORK.get();
+    return sqlSessionManagers != null && sqlSessionManagers.contains(sqlSessionManager);
+  }
+
+  private void bind(SqlSession sqlSession) {
+    localSqlSession.set(sqlSession);
+    markUnitOfWork(isUnitOfWork(sqlSession));
+  }
+
+  private void unbind() {
+    localSqlSession.remove();
+    markUnitOfWork(false);
+  }
+
+  private void markUnitOfWork(boolean bound) {
+    Set<SqlSessionManager> sqlSessionManagers = UNITS_OF_WORK.get();
+    if (bound) {
+      if (sqlSessionManagers == null) {
+        sqlSessionManagers = Collections.newSetFromMap(new IdentityHashMap<>());
+        UNITS_OF_WORK.set(sqlSessionManagers);
+      }
+      sqlSessionManagers.add(sqlSessionManager);
+    } else if (sqlSessionManagers != null && sqlSessionManagers.remove(sqlSessionManager)
+        && sqlSessionManagers.isEmpty()) {
+      UNITS_OF_WORK.remove();
+    }
+  }
+
+  private static void call(Callable<Void> callable) {
+    try {
+      callable.call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      // a Runnable cannot throw checked exceptions
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Field getLocalSqlSessionField() {
+    try {
+      Field field = SqlSessionManager.class.getDeclaredField("localSqlSession");
+      field.setAccessible(true);
+      return field;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ThreadLocal<SqlSession> getLocalSqlSession(SqlSessionManager sqlSessionManager) {
+    if (LOCAL_SQL_SESSION_FIELD == null) {
+      throw new IllegalStateException("Unable to access the SqlSession bound to the current thread by "
+          + SqlSessionManager.class.getName() + ", the 'localSqlSession' field is missing or not accessible");
+    }
+
+    try {
+      // null for the SqlSessionManager instances not built by newInstance, i.e. mocks
+      return (ThreadLocal<SqlSession>) LOCAL_SQL_SESSION_FIELD.get(sqlSessionManager);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Unable to access the SqlSession bound to the current thread by "
+          + SqlSessionManager.class.getName() + ". Cause: " + e, e);
+    }
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Any method marked with this annotation runs as a unit of work: the mapper calls outside of a {@code Transactional}
+ * method share one SqlSession, and so one connection, opened on the first call and closed when the method returns.
+ * <p>
+ * Each statement is still committed on its own, as without unit of work; the {@code Transactional} methods called
+ * within the unit of work run in their own SqlSession.
+ *
+ * @see SqlSessionContext#unitOfWork(java.util.concurrent.Callable)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface UnitOfWork {
+}
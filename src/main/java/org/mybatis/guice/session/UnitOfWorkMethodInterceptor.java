@@ -0,0 +1,57 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import jakarta.inject.Inject;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * Method interceptor for {@link UnitOfWork} annotation.
+ */
+public final class UnitOfWorkMethodInterceptor implements MethodInterceptor {
+
+  @Inject
+  private SqlSessionContext sqlSessionContext;
+
+  /**
+   * Sets the SqlSession context the units of work are bound to.
+   *
+   * @param sqlSessionContext
+   *          the SqlSession context
+   */
+  public void setSqlSessionContext(SqlSessionContext sqlSessionContext) {
+    this.sqlSessionContext = sqlSessionContext;
+  }
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    SqlSession unitOfWork = sqlSessionContext.beginUnitOfWork();
+    if (unitOfWork == null) {
+      // joins the unit of work or the SqlSession already bound to the current thread
+      return invocation.proceed();
+    }
+
+    try {
+      return invocation.proceed();
+    } finally {
+      sqlSessionContext.endUnitOfWork(unitOfWork);
+    }
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+/**
+ * The SqlSession of a unit of work, opened on the first statement and committed after each one, as the
+ * SqlSessionManager does with the SqlSessions it opens per call outside of a managed session.
+ */
+final class UnitOfWorkSqlSession implements InvocationHandler {
+
+  private final SqlSessionFactory sqlSessionFactory;
+
+  private SqlSession sqlSession;
+
+  private UnitOfWorkSqlSession(SqlSessionFactory sqlSessionFactory) {
+    this.sqlSessionFactory = sqlSessionFactory;
+  }
+
+  static SqlSession newInstance(SqlSessionFactory sqlSessionFactory) {
+    return (SqlSession) Proxy.newProxyInstance(SqlSession.class.getClassLoader(), new Class<?>[] { SqlSession.class },
+        new UnitOfWorkSqlSession(sqlSessionFactory));
+  }
+
+  static boolean isUnitOfWork(SqlSession sqlSession) {
+    return sqlSession != null && Proxy.isProxyClass(sqlSession.getClass())
+        && Proxy.getInvocationHandler(sqlSession) instanceof UnitOfWorkSqlSession;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    switch (method.getName()) {
+      case "close":
+        if (sqlSession != null) {
+          try {
+            sqlSession.close();
+          } finally {
+            sqlSession = null;
+          }
+        }
+        return null;
+      case "getConfiguration":
+        return sqlSessionFactory.getConfiguration();
+      case "commit":
+      case "rollback":
+      case "clearCache":
+        return sqlSession != null ? invokeSqlSession(method, args) : null;
+      case "flushStatements":
+        return sqlSession != null ? invokeSqlSession(method, args) : Collections.emptyList();
+      case "toString":
+        return "UnitOfWorkSqlSession[" + sqlSession + "]";
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "equals":
+        return proxy == args[0];
+      default:
+        break;
+    }
+
+    if (sqlSession == null) {
+      sqlSession = sqlSessionFactory.openSession();
+    }
+
+    if (!isStatement(method)) {
+      return invokeSqlSession(method, args);
+    }
+
+    try {
+      Object result = invokeSqlSession(method, args);
+      sqlSession.commit();
+      return result;
+    } catch (Throwable t) {
+      sqlSession.rollback();
+      throw t;
+    }
+  }
+
+  private Object invokeSqlSession(Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(sqlSession, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * The statements are committed on their own, but the cursors which live until the unit of work ends.
+   */
+  private static boolean isStatement(Method method) {
+    String name = method.getName();
+    return name.startsWith("select") && !"selectCursor".equals(name) || "insert".equals(name) || "update".equals(name)
+        || "delete".equals(name);
+  }
+
+}
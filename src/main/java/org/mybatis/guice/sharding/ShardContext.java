@@ -0,0 +1,143 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The shard key, and the shard once resolved, bound to the current thread.
+ * <p>
+ * A context is bound by {@link #callWithShardKey(Object, Callable)}, by the {@link ShardedMethodInterceptor} and by
+ * {@link Shards} while running on a given shard, and unbound when the call returns.
+ */
+public final class ShardContext {
+
+  private static final ThreadLocal<ShardContext> CURRENT = new ThreadLocal<>();
+
+  private final ShardContext previous;
+
+  private final Object shardKey;
+
+  private final String shard;
+
+  private ShardContext(ShardContext previous, Object shardKey, String shard) {
+    this.previous = previous;
+    this.shardKey = shardKey;
+    this.shard = shard;
+  }
+
+  /**
+   * Returns the context bound to the current thread.
+   *
+   * @return the current context, null if none.
+   */
+  public static ShardContext current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Calls the given code with the given shard key bound to the current thread.
+   *
+   * @param <T>
+   *          the result type
+   * @param shardKey
+   *          the shard key
+   * @param callable
+   *          the code to call
+   *
+   * @return the result of the call
+   *
+   * @throws Exception
+   *           the exception thrown by the call
+   */
+  public static <T> T callWithShardKey(Object shardKey, Callable<T> callable) throws Exception {
+    if (shardKey == null) {
+      throw new IllegalArgumentException("Parameter 'shardKey' must be not null");
+    }
+    ShardContext context = begin(shardKey, null);
+    try {
+      return callable.call();
+    } finally {
+      context.end();
+    }
+  }
+
+  /**
+   * Runs the given code with the given shard key bound to the current thread.
+   *
+   * @param shardKey
+   *          the shard key
+   * @param runnable
+   *          the code to run
+   */
+  public static void runWithShardKey(Object shardKey, Runnable runnable) {
+    if (shardKey == null) {
+      throw new IllegalArgumentException("Parameter 'shardKey' must be not null");
+    }
+    ShardContext context = begin(shardKey, null);
+    try {
+      runnable.run();
+    } finally {
+      context.end();
+    }
+  }
+
+  /**
+   * Returns the shard key.
+   *
+   * @return the shard key, null when the context has been bound for a shard directly.
+   */
+  public Object getShardKey() {
+    return shardKey;
+  }
+
+  /**
+   * Returns the name of the shard.
+   *
+   * @return the shard name, null when not resolved yet.
+   */
+  public String getShard() {
+    return shard;
+  }
+
+  /**
+   * Binds a new context to the current thread, the context previously bound is restored by {@link #end()}.
+   *
+   * @param shardKey
+   *          the shard key, may be null
+   * @param shard
+   *          the shard name, may be null
+   *
+   * @return the new context
+   */
+  static ShardContext begin(Object shardKey, String shard) {
+    ShardContext context = new ShardContext(CURRENT.get(), shardKey, shard);
+    CURRENT.set(context);
+    return context;
+  }
+
+  /**
+   * Unbinds this context from the current thread.
+   */
+  void end() {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import java.util.List;
+
+/**
+ * Maps a shard key, i.e. a tenant id, to one of the shards registered with the {@link ShardingModule}.
+ * <p>
+ * Implementations are bound by the {@link ShardingModule} and can be injected.
+ */
+public interface ShardResolver {
+
+  /**
+   * Resolves the shard the given key belongs to.
+   *
+   * @param shardKey
+   *          the shard key, never null
+   * @param shards
+   *          the names of the registered shards, in registration order
+   *
+   * @return the name of the shard, one of {@code shards}
+   */
+  String resolve(Object shardKey, List<String> shards);
+
+}
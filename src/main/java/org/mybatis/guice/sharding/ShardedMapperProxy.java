@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+
+/**
+ * Mapper proxy routing each call to the mapper of the shard the current thread is bound to.
+ *
+ * @param <T>
+ *          the mapper type
+ */
+final class ShardedMapperProxy<T> implements InvocationHandler {
+
+  private final Class<T> mapperType;
+
+  private final Shards shards;
+
+  private ShardedMapperProxy(Class<T> mapperType, Shards shards) {
+    this.mapperType = mapperType;
+    this.shards = shards;
+  }
+
+  /**
+   * Creates a sharded proxy of the given mapper.
+   *
+   * @param <T>
+   *          the mapper type
+   * @param mapperType
+   *          the mapper type
+   * @param shards
+   *          the registered shards
+   *
+   * @return the mapper proxy
+   */
+  static <T> T newInstance(Class<T> mapperType, Shards shards) {
+    return mapperType.cast(Proxy.newProxyInstance(mapperType.getClassLoader(), new Class<?>[] { mapperType },
+        new ShardedMapperProxy<>(mapperType, shards)));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (Object.class.equals(method.getDeclaringClass())) {
+      return method.invoke(this, args);
+    }
+
+    String shard = shards.getCurrentShard();
+    if (shard == null) {
+      throw new PersistenceException("No shard bound to the current thread to invoke " + mapperType.getName() + "."
+          + method.getName() + ", call it from a @Sharded method or bind a key with ShardContext.callWithShardKey");
+    }
+
+    try {
+      return method.invoke(shards.getMapper(mapperType, shard), args);
+    } catch (InvocationTargetException e) {
+      throw e.getTargetException();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ShardedMapperProxy[" + mapperType.getName() + "]";
+  }
+
+}
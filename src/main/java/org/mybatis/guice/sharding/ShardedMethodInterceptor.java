@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import jakarta.inject.Inject;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.mybatis.guice.transactional.Transactional;
+
+/**
+ * Method interceptor for {@link Sharded} annotation.
+ */
+public final class ShardedMethodInterceptor implements MethodInterceptor {
+
+  @Inject
+  private Shards shards;
+
+  private final ConcurrentMap<Method, ShardedMethod> shardedMethods = new ConcurrentHashMap<>();
+
+  /**
+   * Sets the registered shards.
+   *
+   * @param shards
+   *          the registered shards
+   */
+  public void setShards(Shards shards) {
+    this.shards = shards;
+  }
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Method method = invocation.getMethod();
+    ShardedMethod shardedMethod = shardedMethods.get(method);
+    if (shardedMethod == null) {
+      shardedMethod = shardedMethods.computeIfAbsent(method, ShardedMethod::new);
+    }
+
+    Object shardKey;
+    String shard;
+    if (shardedMethod.shardKeyIndex >= 0) {
+      shardKey = invocation.getArguments()[shardedMethod.shardKeyIndex];
+      if (shardKey == null) {
+        throw new PersistenceException("Null shard key passed to " + method.toGenericString());
+      }
+      shard = shards.resolve(shardKey);
+    } else {
+      ShardContext current = ShardContext.current();
+      shard = shards.getCurrentShard();
+      if (shard == null) {
+        throw new PersistenceException("No shard key for " + method.toGenericString()
+            + ", annotate a parameter with @ShardKey or bind one with ShardContext.callWithShardKey");
+      }
+      shardKey = current.getShardKey();
+    }
+
+    ShardContext context = ShardContext.begin(shardKey, shard);
+    try {
+      if (shardedMethod.transactional) {
+        return shards.getTransactionalInterceptor(shard).invoke(invocation);
+      }
+      return invocation.proceed();
+    } finally {
+      context.end();
+    }
+  }
+
+  private static final class ShardedMethod {
+
+    final int shardKeyIndex;
+
+    final boolean transactional;
+
+    ShardedMethod(Method method) {
+      this.shardKeyIndex = getShardKeyIndex(method);
+      this.transactional = method.isAnnotationPresent(Transactional.class)
+          || method.getDeclaringClass().isAnnotationPresent(Transactional.class);
+    }
+
+    private static int getShardKeyIndex(Method method) {
+      Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+      for (int i = 0; i < parameterAnnotations.length; i++) {
+        for (Annotation annotation : parameterAnnotations[i]) {
+          if (annotation instanceof ShardKey) {
+            return i;
+          }
+        }
+      }
+      return -1;
+    }
+
+  }
+
+}
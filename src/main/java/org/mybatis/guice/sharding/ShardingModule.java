@@ -0,0 +1,167 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import static com.google.inject.matcher.Matchers.annotatedWith;
+import static com.google.inject.matcher.Matchers.any;
+import static com.google.inject.matcher.Matchers.not;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.Matcher;
+import com.google.inject.multibindings.Multibinder;
+import com.google.inject.name.Names;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Registers the shards, each one a MyBatis environment installed with a qualified {@code MyBatisModule}, i.e.
+ * {@code new MyBatisModule(Names.named("shard0")) { ... }}, and binds:
+ * <ul>
+ * <li>{@link Shards}, to resolve shard keys and run mapper calls on every shard;</li>
+ * <li>the {@link ShardResolver};</li>
+ * <li>the sharded mappers, unqualified, routing each call to the shard the current thread is bound to;</li>
+ * <li>the {@link ShardedMethodInterceptor} of the {@link Sharded} methods.</li>
+ * </ul>
+ * <p>
+ * The {@link Sharded} methods and classes are left out by the interceptors of an unqualified {@code MyBatisModule}
+ * installed in the same injector: their transaction runs on the resolved shard only.
+ */
+public final class ShardingModule extends AbstractModule {
+
+  private static final Matcher<Method> DECLARED_BY_OBJECT = method -> method.getDeclaringClass() == Object.class;
+
+  private static final Matcher<Method> SYNTHETIC = Method::isSynthetic;
+
+  private final List<String> shardNames;
+
+  private final Class<? extends ShardResolver> shardResolverClass;
+
+  private final Set<Class<?>> mapperClasses;
+
+  private ShardingModule(List<String> shardNames, Class<? extends ShardResolver> shardResolverClass,
+      Set<Class<?>> mapperClasses) {
+    this.shardNames = shardNames;
+    this.shardResolverClass = shardResolverClass;
+    this.mapperClasses = mapperClasses;
+  }
+
+  @Override
+  protected void configure() {
+    Shards shards = new Shards(shardNames);
+    bind(Shards.class).toInstance(shards);
+    bind(ShardResolver.class).to(shardResolverClass);
+
+    for (Class<?> mapperClass : mapperClasses) {
+      bindShardedMapper(mapperClass, shards);
+    }
+
+    ShardedMethodInterceptor interceptor = new ShardedMethodInterceptor();
+    interceptor.setShards(shards);
+    bindInterceptor(any(), not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(Sharded.class)),
+        interceptor);
+    bindInterceptor(annotatedWith(Sharded.class),
+        not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(not(annotatedWith(Sharded.class))), interceptor);
+
+    // the sharded methods do not run in the unqualified environment too
+    Multibinder.newSetBinder(binder(), new TypeLiteral<Matcher<AnnotatedElement>>() {},
+        Names.named("mybatis.interceptors.excluded")).permitDuplicates().addBinding()
+        .toInstance(annotatedWith(Sharded.class));
+  }
+
+  private <T> void bindShardedMapper(Class<T> mapperType, Shards shards) {
+    bind(mapperType).toInstance(ShardedMapperProxy.newInstance(mapperType, shards));
+  }
+
+  public static final class Builder {
+
+    private final List<String> shardNames = new ArrayList<>();
+
+    private Class<? extends ShardResolver> shardResolverClass = HashShardResolver.class;
+
+    private final Set<Class<?>> mapperClasses = new LinkedHashSet<>();
+
+    /**
+     * Adds a shard.
+     *
+     * @param shardName
+     *          the name of the shard environment, qualified by {@code @Named(shardName)}
+     *
+     * @return the builder
+     */
+    public Builder addShard(String shardName) {
+      if (shardName == null) {
+        throw new IllegalArgumentException("Parameter 'shardName' must be not null");
+      }
+      if (shardNames.contains(shardName)) {
+        throw new IllegalArgumentException("Shard '" + shardName + "' already added");
+      }
+      shardNames.add(shardName);
+      return this;
+    }
+
+    /**
+     * Sets the shard resolver class, {@link HashShardResolver} by default.
+     *
+     * @param shardResolverClass
+     *          the shardResolverClass to set
+     *
+     * @return the builder
+     */
+    public Builder setShardResolverClass(Class<? extends ShardResolver> shardResolverClass) {
+      if (shardResolverClass == null) {
+        throw new IllegalArgumentException("Parameter 'shardResolverClass' must be not null");
+      }
+      this.shardResolverClass = shardResolverClass;
+      return this;
+    }
+
+    /**
+     * Adds a sharded mapper, it must be registered in every shard environment.
+     *
+     * @param mapperClass
+     *          the mapper class
+     *
+     * @return the builder
+     */
+    public Builder addMapperClass(Class<?> mapperClass) {
+      if (mapperClass == null) {
+        throw new IllegalArgumentException("Parameter 'mapperClass' must be not null");
+      }
+      mapperClasses.add(mapperClass);
+      return this;
+    }
+
+    /**
+     * Creates the module.
+     *
+     * @return the sharding module
+     */
+    public ShardingModule create() {
+      if (shardNames.isEmpty()) {
+        throw new IllegalStateException("At least one shard must be added");
+      }
+      return new ShardingModule(new ArrayList<>(shardNames), shardResolverClass, new LinkedHashSet<>(mapperClasses));
+    }
+
+  }
+
+}
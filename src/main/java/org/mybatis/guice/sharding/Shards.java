@@ -0,0 +1,366 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+
+/**
+ * The shards registered with the {@link ShardingModule}, each one a MyBatis environment qualified by
+ * {@code @Named("<shard name>")}.
+ * <p>
+ * Besides resolving shard keys, it runs mapper calls on every shard in parallel and merges their results, see
+ * {@link #forEachShard(Class, Function)} and {@link #gather(Class, Function)}. Those calls run in their own auto
+ * committed SqlSessions, outside the unit of work of the calling thread. The pool created for them by default is
+ * released by {@link #shutdown()}.
+ */
+public final class Shards {
+
+  private final List<String> shardNames;
+
+  private final ConcurrentMap<String, Shard> shards = new ConcurrentHashMap<>();
+
+  @Inject
+  private Injector injector;
+
+  @Inject
+  private ShardResolver shardResolver;
+
+  private volatile ExecutorService executorService;
+
+  /**
+   * The pool created by default, shut down by {@link #shutdown()}.
+   */
+  private ExecutorService defaultExecutorService;
+
+  Shards(List<String> shardNames) {
+    this.shardNames = Collections.unmodifiableList(new ArrayList<>(shardNames));
+  }
+
+  /**
+   * Sets the executor running the calls on every shard; by default a pool with one thread per shard is created on
+   * first use.
+   *
+   * @param executorService
+   *          the executor service
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setExecutorService(@Named("mybatis.sharding.executor") ExecutorService executorService) {
+    this.executorService = executorService;
+  }
+
+  /**
+   * Shuts down the pool created by default, if any: it is created again on next use. An executor set with
+   * {@link #setExecutorService(ExecutorService)} is left to its owner.
+   */
+  public synchronized void shutdown() {
+    if (defaultExecutorService != null) {
+      defaultExecutorService.shutdown();
+      if (executorService == defaultExecutorService) {
+        executorService = null;
+      }
+      defaultExecutorService = null;
+    }
+  }
+
+  /**
+   * Returns the names of the registered shards.
+   *
+   * @return the shard names, in registration order
+   */
+  public List<String> getShardNames() {
+    return shardNames;
+  }
+
+  /**
+   * Resolves the shard the given key belongs to.
+   *
+   * @param shardKey
+   *          the shard key
+   *
+   * @return the shard name
+   *
+   * @throws PersistenceException
+   *           if the resolver returns an unknown shard
+   */
+  public String resolve(Object shardKey) {
+    if (shardKey == null) {
+      throw new IllegalArgumentException("Parameter 'shardKey' must be not null");
+    }
+    String shard = shardResolver.resolve(shardKey, shardNames);
+    if (!shardNames.contains(shard)) {
+      throw new PersistenceException(
+          "ShardResolver " + shardResolver + " resolved shard key '" + shardKey + "' to unknown shard '" + shard + "'");
+    }
+    return shard;
+  }
+
+  /**
+   * Returns the shard the current thread is bound to, see {@link ShardContext}.
+   *
+   * @return the shard name, null if no shard key is bound to the current thread
+   */
+  public String getCurrentShard() {
+    ShardContext context = ShardContext.current();
+    if (context == null) {
+      return null;
+    }
+    return context.getShard() != null ? context.getShard() : resolve(context.getShardKey());
+  }
+
+  /**
+   * Returns the SqlSessionManager of the given shard.
+   *
+   * @param shard
+   *          the shard name
+   *
+   * @return the SqlSessionManager
+   */
+  public SqlSessionManager getSqlSessionManager(String shard) {
+    return getShard(shard).sqlSessionManager;
+  }
+
+  /**
+   * Returns the mapper of the given shard.
+   *
+   * @param <T>
+   *          the mapper type
+   * @param mapperType
+   *          the mapper type
+   * @param shard
+   *          the shard name
+   *
+   * @return the mapper bound with {@code @Named("<shard name>")}
+   */
+  public <T> T getMapper(Class<T> mapperType, String shard) {
+    return getShard(shard).getMapper(mapperType);
+  }
+
+  /**
+   * Calls the given code on the given shard: sharded mappers invoked meanwhile are routed to it.
+   *
+   * @param <T>
+   *          the result type
+   * @param shard
+   *          the shard name
+   * @param callable
+   *          the code to call
+   *
+   * @return the result of the call
+   *
+   * @throws Exception
+   *           the exception thrown by the call
+   */
+  public <T> T callOnShard(String shard, Callable<T> callable) throws Exception {
+    getShard(shard);
+    ShardContext context = ShardContext.begin(null, shard);
+    try {
+      return callable.call();
+    } finally {
+      context.end();
+    }
+  }
+
+  /**
+   * Applies the given function to the mapper of every shard, in parallel.
+   *
+   * @param <M>
+   *          the mapper type
+   * @param <R>
+   *          the result type
+   * @param mapperType
+   *          the mapper type
+   * @param function
+   *          the function invoking the mapper
+   *
+   * @return the results, in shard registration order
+   *
+   * @throws PersistenceException
+   *           wrapping the checked exception thrown on a shard; runtime exceptions are rethrown as is
+   */
+  public <M, R> List<R> forEachShard(Class<M> mapperType, Function<? super M, ? extends R> function) {
+    ExecutorService executor = getExecutorService();
+    List<Future<? extends R>> futures = new ArrayList<>(shardNames.size());
+    try {
+      for (String shard : shardNames) {
+        M mapper = getMapper(mapperType, shard);
+        futures.add(executor.submit(() -> {
+          ShardContext context = ShardContext.begin(null, shard);
+          try {
+            return function.apply(mapper);
+          } finally {
+            context.end();
+          }
+        }));
+      }
+
+      List<R> results = new ArrayList<>(futures.size());
+      for (int i = 0; i < futures.size(); i++) {
+        results.add(getResult(futures.get(i), shardNames.get(i)));
+      }
+      return results;
+    } finally {
+      // no-op once completed, stops the remaining shards when one has failed
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Applies the given function to the mapper of every shard, in parallel, and merges the returned collections.
+   *
+   * @param <M>
+   *          the mapper type
+   * @param <E>
+   *          the element type
+   * @param mapperType
+   *          the mapper type
+   * @param function
+   *          the function invoking the mapper
+   *
+   * @return the elements of every shard, in shard registration order
+   *
+   * @throws PersistenceException
+   *           wrapping the checked exception thrown on a shard; runtime exceptions are rethrown as is
+   */
+  public <M, E> List<E> gather(Class<M> mapperType, Function<? super M, ? extends Collection<? extends E>> function) {
+    List<E> elements = new ArrayList<>();
+    for (Collection<? extends E> shardElements : forEachShard(mapperType, function)) {
+      if (shardElements != null) {
+        elements.addAll(shardElements);
+      }
+    }
+    return elements;
+  }
+
+  /**
+   * Returns the interceptor starting the managed SqlSession of the given shard.
+   *
+   * @param shard
+   *          the shard name
+   *
+   * @return the transactional interceptor
+   */
+  TransactionalMethodInterceptor getTransactionalInterceptor(String shard) {
+    return getShard(shard).transactionalInterceptor;
+  }
+
+  private Shard getShard(String name) {
+    Shard shard = shards.get(name);
+    if (shard == null) {
+      if (!shardNames.contains(name)) {
+        throw new PersistenceException("Unknown shard '" + name + "', registered shards are " + shardNames);
+      }
+      shard = shards.computeIfAbsent(name,
+          n -> new Shard(n, injector.getInstance(Key.get(SqlSessionManager.class, Names.named(n))),
+              injector.getInstance(Key.get(TransactionalMethodInterceptor.class, Names.named(n)))));
+    }
+    return shard;
+  }
+
+  private ExecutorService getExecutorService() {
+    ExecutorService executor = executorService;
+    if (executor == null) {
+      synchronized (this) {
+        executor = executorService;
+        if (executor == null) {
+          AtomicInteger threadCount = new AtomicInteger();
+          ThreadPoolExecutor pool = new ThreadPoolExecutor(shardNames.size(), shardNames.size(), 60, TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "mybatis-shard-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              });
+          pool.allowCoreThreadTimeOut(true);
+          executor = pool;
+          defaultExecutorService = executor;
+          executorService = executor;
+        }
+      }
+    }
+    return executor;
+  }
+
+  private static <R> R getResult(Future<? extends R> future, String shard) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PersistenceException("Interrupted while waiting for shard '" + shard + "'", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new PersistenceException("Error on shard '" + shard + "'", cause);
+    }
+  }
+
+  private final class Shard {
+
+    final String name;
+
+    final SqlSessionManager sqlSessionManager;
+
+    final TransactionalMethodInterceptor transactionalInterceptor;
+
+    final ConcurrentMap<Class<?>, Object> mappers = new ConcurrentHashMap<>();
+
+    Shard(String name, SqlSessionManager sqlSessionManager, TransactionalMethodInterceptor transactionalInterceptor) {
+      this.name = name;
+      this.sqlSessionManager = sqlSessionManager;
+      this.transactionalInterceptor = transactionalInterceptor;
+    }
+
+    <T> T getMapper(Class<T> mapperType) {
+      Object mapper = mappers.get(mapperType);
+      if (mapper == null) {
+        mapper = mappers.computeIfAbsent(mapperType, t -> injector.getInstance(Key.get(t, Names.named(name))));
+      }
+      return mapperType.cast(mapper);
+    }
+
+  }
+
+}
@@ -0,0 +1,36 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+/**
+ * Enum of the behaviours of a {@link Transactional} method invoked while a SqlSession is already managed for the
+ * current thread.
+ */
+public enum Propagation {
+
+  /**
+   * Joins the SqlSession already in progress, any failure rolls back the whole unit of work; a new SqlSession is
+   * started otherwise.
+   */
+  REQUIRED,
+
+  /**
+   * Runs inside a JDBC {@link java.sql.Savepoint} of the SqlSession already in progress, a failure rolls back only
+   * the work done since the savepoint; a new SqlSession is started otherwise.
+   */
+  NESTED
+
+}
@@ -0,0 +1,128 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Registers {@link TransactionSynchronization} callbacks in the {@link Transactional} unit of work in progress on the
+ * current thread.
+ * <p>
+ * Callbacks registered with {@link #registerAsync(TransactionSynchronization)} are dispatched to the executor bound
+ * to {@code @Named("mybatis.synchronization.executor")}, moving slow side-effects off the calling thread.
+ * <p>
+ * When a JTA transaction is active, the callbacks are registered in that transaction and notified of its outcome,
+ * on the thread completing it.
+ */
+@Singleton
+public class SynchronizationRegistry {
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.synchronization.executor")
+  private Executor executor;
+
+  /**
+   * Sets the executor the asynchronous callbacks are dispatched to.
+   *
+   * @param executor
+   *          the executor
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Checks whether callbacks can be registered, that is when a unit of work is in progress on the current thread.
+   *
+   * @return true if a unit of work is in progress, false otherwise.
+   */
+  public boolean isSynchronizationActive() {
+    return TransactionContext.current() != null;
+  }
+
+  /**
+   * Registers callbacks notified on the calling thread when the current unit of work completes.
+   *
+   * @param synchronization
+   *          the callbacks
+   *
+   * @throws IllegalStateException
+   *           if no unit of work is in progress on the current thread
+   */
+  public void register(TransactionSynchronization synchronization) {
+    if (synchronization == null) {
+      throw new IllegalArgumentException("Parameter 'synchronization' must be not null");
+    }
+    getCurrentContext().registerSynchronization(synchronization);
+  }
+
+  /**
+   * Registers callbacks dispatched to the executor when the current unit of work completes.
+   *
+   * @param synchronization
+   *          the callbacks
+   *
+   * @throws IllegalStateException
+   *           if no executor has been set or if no unit of work is in progress on the current thread
+   */
+  public void registerAsync(TransactionSynchronization synchronization) {
+    if (synchronization == null) {
+      throw new IllegalArgumentException("Parameter 'synchronization' must be not null");
+    }
+    if (executor == null) {
+      throw new IllegalStateException("No executor bound to @Named(\"mybatis.synchronization.executor\")");
+    }
+    getCurrentContext().registerSynchronization(new AsyncSynchronization(synchronization, executor));
+  }
+
+  private static TransactionContext getCurrentContext() {
+    TransactionContext context = TransactionContext.current();
+    if (context == null) {
+      throw new IllegalStateException("No @Transactional unit of work in progress on the current thread");
+    }
+    return context;
+  }
+
+  private static final class AsyncSynchronization implements TransactionSynchronization {
+
+    private final TransactionSynchronization synchronization;
+
+    private final Executor executor;
+
+    AsyncSynchronization(TransactionSynchronization synchronization, Executor executor) {
+      this.synchronization = synchronization;
+      this.executor = executor;
+    }
+
+    @Override
+    public void afterCompletion(boolean committed) {
+      // a single task keeps the callbacks ordered
+      executor.execute(() -> {
+        if (committed) {
+          synchronization.afterCommit();
+        } else {
+          synchronization.afterRollback();
+        }
+        synchronization.afterCompletion(committed);
+      });
+    }
+
+  }
+
+}
@@ -0,0 +1,261 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * The attributes of the {@link Transactional} unit of work in progress on the current thread.
+ * <p>
+ * A context is bound when the {@link TransactionalMethodInterceptor} starts a new managed SqlSession and unbound when
+ * that SqlSession is closed, so components invoked meanwhile, i.e. a DataSource routing read only work to a replica,
+ * can inspect it.
+ */
+public final class TransactionContext {
+
+  private static final Log log = LogFactory.getLog(TransactionContext.class);
+
+  private static final ThreadLocal<TransactionContext> CURRENT = new ThreadLocal<>();
+
+  /**
+   * Hands the callbacks over to the JTA transaction in progress on the current thread, if any.
+   */
+  private static final ThreadLocal<Consumer<TransactionSynchronization>> REGISTRAR = new ThreadLocal<>();
+
+  private final TransactionContext previous;
+
+  private final boolean readOnly;
+
+  private final int timeout;
+
+  private final long deadline;
+
+  private List<TransactionSynchronization> synchronizations;
+
+  private TransactionContext(TransactionContext previous, boolean readOnly, int timeout) {
+    this.previous = previous;
+    this.readOnly = readOnly;
+    this.timeout = timeout;
+    this.deadline = timeout > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout) : 0;
+  }
+
+  /**
+   * Returns the context of the unit of work in progress on the current thread.
+   *
+   * @return the current context, null if no unit of work is in progress.
+   */
+  public static TransactionContext current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Checks whether the unit of work in progress on the current thread is read only.
+   *
+   * @return true if a read only unit of work is in progress, false otherwise.
+   */
+  public static boolean isCurrentReadOnly() {
+    TransactionContext context = CURRENT.get();
+    return context != null && context.readOnly;
+  }
+
+  /**
+   * Flag to indicate the unit of work only reads data.
+   *
+   * @return true if the unit of work is read only.
+   *
+   * @see Transactional#readOnly()
+   */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * Flag to indicate the unit of work has a deadline.
+   *
+   * @return true if the unit of work has a timeout.
+   *
+   * @see Transactional#timeout()
+   */
+  public boolean hasTimeout() {
+    return timeout > 0;
+  }
+
+  /**
+   * Returns the time left before the unit of work deadline.
+   *
+   * @return the time left in milliseconds, {@link Long#MAX_VALUE} if the unit of work has no timeout.
+   *
+   * @throws TransactionTimedOutException
+   *           if the deadline has been reached
+   */
+  public long getTimeToLiveInMillis() {
+    if (timeout <= 0) {
+      return Long.MAX_VALUE;
+    }
+
+    long timeToLive = deadline - System.nanoTime();
+    if (timeToLive <= 0) {
+      throw new TransactionTimedOutException("Transaction timed out: deadline of " + timeout + " second(s) exceeded");
+    }
+    return TimeUnit.NANOSECONDS.toMillis(timeToLive);
+  }
+
+  /**
+   * Returns the time left before the unit of work deadline, rounded up to the next second as JDBC query timeouts.
+   *
+   * @return the time left in seconds, {@link Integer#MAX_VALUE} if the unit of work has no timeout.
+   *
+   * @throws TransactionTimedOutException
+   *           if the deadline has been reached
+   */
+  public int getTimeToLiveInSeconds() {
+    if (timeout <= 0) {
+      return Integer.MAX_VALUE;
+    }
+    return (int) Math.min(timeout, (getTimeToLiveInMillis() + 999) / 1000);
+  }
+
+  /**
+   * Checks the unit of work deadline has not been reached.
+   *
+   * @throws TransactionTimedOutException
+   *           if the deadline has been reached
+   */
+  void checkTimeout() {
+    getTimeToLiveInMillis();
+  }
+
+  /**
+   * Registers callbacks notified when the unit of work completes, or when the JTA transaction it takes part in
+   * completes.
+   *
+   * @param synchronization
+   *          the callbacks
+   */
+  void registerSynchronization(TransactionSynchronization synchronization) {
+    Consumer<TransactionSynchronization> registrar = REGISTRAR.get();
+    if (registrar != null) {
+      registrar.accept(synchronization);
+      return;
+    }
+    if (synchronizations == null) {
+      synchronizations = new ArrayList<>();
+    }
+    synchronizations.add(synchronization);
+  }
+
+  /**
+   * Returns the number of callbacks registered so far, to be passed to {@link #discardSynchronizations(int)}.
+   *
+   * @return the number of registered callbacks
+   */
+  int getSynchronizationCount() {
+    return synchronizations == null ? 0 : synchronizations.size();
+  }
+
+  /**
+   * Discards the callbacks registered after the given count, i.e. by a nested unit of work rolled back to its
+   * savepoint.
+   *
+   * @param count
+   *          the number of callbacks to keep
+   */
+  void discardSynchronizations(int count) {
+    if (synchronizations != null && synchronizations.size() > count) {
+      synchronizations.subList(count, synchronizations.size()).clear();
+    }
+  }
+
+  /**
+   * Notifies the registered callbacks, in registration order, of the unit of work completion. A failing callback is
+   * logged and does not prevent the next ones from being notified.
+   *
+   * @param committed
+   *          true if the unit of work has been committed, false if rolled back
+   */
+  void afterCompletion(boolean committed) {
+    if (synchronizations == null) {
+      return;
+    }
+
+    List<TransactionSynchronization> completed = synchronizations;
+    synchronizations = null;
+    for (TransactionSynchronization synchronization : completed) {
+      try {
+        if (committed) {
+          synchronization.afterCommit();
+        } else {
+          synchronization.afterRollback();
+        }
+        synchronization.afterCompletion(committed);
+      } catch (RuntimeException e) {
+        log.error("TransactionSynchronization " + synchronization + " threw exception after completion", e);
+      }
+    }
+  }
+
+  /**
+   * Binds a new context to the current thread, the context previously bound is restored by {@link #end()}.
+   *
+   * @param readOnly
+   *          the read only flag
+   * @param timeout
+   *          the timeout in seconds, no timeout if not positive
+   *
+   * @return the new context
+   */
+  static TransactionContext begin(boolean readOnly, int timeout) {
+    TransactionContext context = new TransactionContext(CURRENT.get(), readOnly, timeout);
+    CURRENT.set(context);
+    return context;
+  }
+
+  /**
+   * Binds the registrar receiving the callbacks while a JTA transaction is in progress on the current thread.
+   *
+   * @param registrar
+   *          the registrar, {@code null} to keep the callbacks in the unit of work
+   *
+   * @return the registrar previously bound, to be restored once the JTA transaction is left
+   */
+  static Consumer<TransactionSynchronization> bindRegistrar(Consumer<TransactionSynchronization> registrar) {
+    Consumer<TransactionSynchronization> previous = REGISTRAR.get();
+    if (registrar == null) {
+      REGISTRAR.remove();
+    } else {
+      REGISTRAR.set(registrar);
+    }
+    return previous;
+  }
+
+  /**
+   * Unbinds this context from the current thread.
+   */
+  void end() {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+}
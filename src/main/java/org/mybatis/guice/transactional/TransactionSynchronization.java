@@ -0,0 +1,49 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+/**
+ * Callbacks notified when the {@link Transactional} unit of work they have been registered in completes.
+ * <p>
+ * The callbacks run once the managed SqlSession has been committed or rolled back and closed, outside of the unit of
+ * work, so they are suitable to publish the side-effects of the transaction, i.e. cache invalidations or messages.
+ *
+ * @see SynchronizationRegistry
+ */
+public interface TransactionSynchronization {
+
+  /**
+   * Invoked after the unit of work has been committed.
+   */
+  default void afterCommit() {
+  }
+
+  /**
+   * Invoked after the unit of work has been rolled back.
+   */
+  default void afterRollback() {
+  }
+
+  /**
+   * Invoked after the unit of work has been completed, after {@link #afterCommit()} or {@link #afterRollback()}.
+   *
+   * @param committed
+   *          true if the unit of work has been committed, false if rolled back
+   */
+  default void afterCompletion(boolean committed) {
+  }
+
+}
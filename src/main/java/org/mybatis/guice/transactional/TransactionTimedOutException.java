@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+
+/**
+ * Thrown when a {@link Transactional} unit of work exceeds its {@link Transactional#timeout()}.
+ */
+public class TransactionTimedOutException extends PersistenceException {
+
+  private static final long serialVersionUID = 4207958409713565386L;
+
+  /**
+   * Instantiates a new transaction timed out exception.
+   *
+   * @param message
+   *          the message
+   */
+  public TransactionTimedOutException(String message) {
+    super(message);
+  }
+
+}
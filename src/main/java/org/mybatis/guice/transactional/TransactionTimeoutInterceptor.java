@@ -0,0 +1,50 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.Connection;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+/**
+ * MyBatis plugin that bounds the query timeout of every statement with the time left before the
+ * {@link Transactional#timeout()} of the unit of work in progress expires.
+ * <p>
+ * Register it with {@code addInterceptorClass(TransactionTimeoutInterceptor.class)} in the MyBatisModule.
+ */
+@Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class, Integer.class }))
+public class TransactionTimeoutInterceptor implements Interceptor {
+
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    TransactionContext context = TransactionContext.current();
+    if (context != null && context.hasTimeout()) {
+      Object[] args = invocation.getArgs();
+      int timeToLive = context.getTimeToLiveInSeconds();
+      Integer transactionTimeout = (Integer) args[1];
+      if (transactionTimeout == null || transactionTimeout > timeToLive) {
+        // StatementHandler applies the transaction timeout when lower than the statement one
+        args[1] = timeToLive;
+      }
+    }
+    return invocation.proceed();
+  }
+
+}
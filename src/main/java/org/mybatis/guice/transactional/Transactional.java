@@ -19,6 +19,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.sql.SQLTransactionRollbackException;
 
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.TransactionIsolationLevel;
@@ -49,7 +50,8 @@ public @interface Transactional {
    *
    * @return the constant indicating the transaction isolation level.
    *
-   * @deprecated use {@link #isolation()} instead, setting this property has no effect.
+   * @deprecated use {@link #isolation()} instead, this property is only applied when {@link #isolation()} is
+   *             {@link Isolation#DEFAULT}.
    */
   @Deprecated
   TransactionIsolationLevel isolationLevel() default TransactionIsolationLevel.NONE;
@@ -63,12 +65,13 @@ public @interface Transactional {
 
   /**
    * Flag to indicate the auto commit policy.
+   * <p>
+   * When true the managed SqlSession runs in auto commit mode, every statement is committed as soon as it completes
+   * and the explicit commit/rollback at the end of the method is skipped, so neither failures nor
+   * {@link #rollbackOnly()} undo the completed statements. Suitable for single statement methods.
    *
    * @return false by default, user defined otherwise.
-   *
-   * @deprecated Users that intend auto commit can achieve it by simply not using {@literal @Transactional}
    */
-  @Deprecated
   boolean autoCommit() default false;
 
   /**
@@ -99,6 +102,86 @@ public @interface Transactional {
    */
   boolean rollbackOnly() default false;
 
+  /**
+   * Flag to indicate that the unit of work only reads data.
+   * <p>
+   * The managed SqlSession connection is switched to read only mode and the transaction is not committed. The flag is
+   * also exposed by {@link TransactionContext}, so that a DataSource can route the work to a replica.
+   * <p>
+   * This parameter is false by default and has no effect on methods joining a SqlSession already in progress.
+   *
+   * @return if true, the unit of work is read only.
+   */
+  boolean readOnly() default false;
+
+  /**
+   * The timeout of the unit of work in seconds.
+   * <p>
+   * The deadline starts with the managed SqlSession, a unit of work still running past it is rolled back. Register the
+   * {@link TransactionTimeoutInterceptor} plugin to bound the query timeout of every statement with the time left as
+   * well.
+   * <p>
+   * This parameter is -1 by default, meaning no timeout, and has no effect on methods joining a SqlSession already in
+   * progress.
+   *
+   * @return the timeout of the unit of work in seconds.
+   */
+  int timeout() default -1;
+
+  /**
+   * The number of times the unit of work is retried after failing with a transient error, such as a deadlock or a
+   * serialization failure. Each attempt runs in a new SqlSession, the failed one being rolled back and closed.
+   * <p>
+   * This parameter is 0 by default, meaning no retry, and has no effect on methods joining a SqlSession already in
+   * progress, nor on SqlSessions taking part in a managed (JTA) transaction, which the failed attempt could not be
+   * rolled back from.
+   *
+   * @return the number of retries.
+   *
+   * @see #retryBackoff()
+   * @see #retrySqlStates()
+   * @see #retryOn()
+   */
+  int retryAttempts() default 0;
+
+  /**
+   * The base delay in milliseconds before retrying the unit of work, doubled after each attempt and randomized by up
+   * to the half so that concurrent units of work do not collide again. The delay is capped at 30 seconds.
+   * <p>
+   * This parameter is 50 by default.
+   *
+   * @return the base delay in milliseconds before retrying the unit of work.
+   */
+  long retryBackoff() default 50;
+
+  /**
+   * The SQLStates of the {@link java.sql.SQLException}s, anywhere in the cause chain, that make the unit of work
+   * retryable.
+   * <p>
+   * This parameter is {@code {"40001", "40P01"}} by default, serialization failure and deadlock.
+   *
+   * @return the retryable SQLStates.
+   */
+  String[] retrySqlStates() default { "40001", "40P01" };
+
+  /**
+   * The exception types, anywhere in the cause chain, that make the unit of work retryable.
+   * <p>
+   * This parameter is {@link java.sql.SQLTransactionRollbackException} by default.
+   *
+   * @return the retryable exception types.
+   */
+  Class<? extends Throwable>[] retryOn() default { SQLTransactionRollbackException.class };
+
+  /**
+   * The behaviour when a SqlSession is already managed for the current thread.
+   * <p>
+   * This parameter is {@link Propagation#REQUIRED} by default.
+   *
+   * @return the behaviour when a SqlSession is already managed for the current thread.
+   */
+  Propagation propagation() default Propagation.REQUIRED;
+
   //
   // from jakarta.transaction.Transactional
   //
@@ -0,0 +1,315 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+
+/**
+ * Immutable descriptor of an intercepted {@link Transactional} method.
+ * <p>
+ * The annotation lookup, the rethrow constructor resolution and the debug prefix are computed once per method, so the
+ * interceptors do not need any reflection on the invocation path.
+ */
+final class TransactionalMethod {
+
+  /**
+   * The upper bound of the delay between two attempts, in milliseconds.
+   */
+  static final long MAX_RETRY_DELAY = 30000;
+
+  static final Class<?>[] CAUSE_TYPES = new Class[] { Throwable.class };
+
+  static final Class<?>[] MESSAGE_CAUSE_TYPES = new Class[] { String.class, Throwable.class };
+
+  private final Method method;
+
+  private final Class<?>[] declaredExceptionTypes;
+
+  private final Transactional transactional;
+
+  private final ExecutorType executorType;
+
+  private final TransactionIsolationLevel isolationLevel;
+
+  private final boolean autoCommit;
+
+  private final boolean force;
+
+  private final boolean rollbackOnly;
+
+  private final boolean nested;
+
+  private final boolean readOnly;
+
+  private final int timeout;
+
+  private final int retryAttempts;
+
+  private final long retryBackoff;
+
+  private final Set<String> retrySqlStates;
+
+  private final Class<? extends Throwable>[] retryOn;
+
+  private final Class<? extends Throwable> rethrowExceptionsAs;
+
+  private final String exceptionMessage;
+
+  private final Class<?>[] rethrowConstructorTypes;
+
+  private final Constructor<? extends Throwable> rethrowConstructor;
+
+  private final String debugPrefix;
+
+  /**
+   * Caches, per caught exception type, whether it is re-thrown as is or wrapped in the rethrow type.
+   */
+  private final ConcurrentMap<Class<?>, Boolean> rethrownAsIsTypes = new ConcurrentHashMap<>();
+
+  private TransactionalMethod(Method method, Transactional transactional) {
+    this.method = method;
+    this.declaredExceptionTypes = method.getExceptionTypes();
+    this.transactional = transactional;
+    this.executorType = transactional.executorType();
+    this.isolationLevel = getIsolationLevel(transactional);
+    this.autoCommit = transactional.autoCommit();
+    this.force = transactional.force();
+    this.rollbackOnly = transactional.rollbackOnly();
+    this.nested = transactional.propagation() == Propagation.NESTED;
+    this.readOnly = transactional.readOnly();
+    this.timeout = transactional.timeout();
+    this.retryAttempts = Math.max(0, transactional.retryAttempts());
+    this.retryBackoff = Math.max(0, transactional.retryBackoff());
+    this.retrySqlStates = new HashSet<>(Arrays.asList(transactional.retrySqlStates()));
+    this.retryOn = transactional.retryOn();
+    this.rethrowExceptionsAs = transactional.rethrowExceptionsAs();
+    this.exceptionMessage = transactional.exceptionMessage().isEmpty() ? null : transactional.exceptionMessage();
+    this.rethrowConstructorTypes = exceptionMessage != null ? MESSAGE_CAUSE_TYPES : CAUSE_TYPES;
+    this.rethrowConstructor = getMatchingConstructor(rethrowExceptionsAs, rethrowConstructorTypes);
+    this.debugPrefix = "[Intercepted method: " + method.toGenericString() + "]";
+  }
+
+  /**
+   * Resolves the {@link Transactional} settings of the given method.
+   *
+   * @param method
+   *          the intercepted method
+   *
+   * @return the method descriptor
+   */
+  static TransactionalMethod resolve(Method method) {
+    Transactional transactional = method.getAnnotation(Transactional.class);
+
+    // The annotation may be present at the class level instead
+    if (transactional == null) {
+      transactional = method.getDeclaringClass().getAnnotation(Transactional.class);
+    }
+
+    return new TransactionalMethod(method, transactional);
+  }
+
+  Method getMethod() {
+    return method;
+  }
+
+  Transactional getTransactional() {
+    return transactional;
+  }
+
+  ExecutorType getExecutorType() {
+    return executorType;
+  }
+
+  TransactionIsolationLevel getIsolationLevel() {
+    return isolationLevel;
+  }
+
+  boolean isAutoCommit() {
+    return autoCommit;
+  }
+
+  boolean isForce() {
+    return force;
+  }
+
+  boolean isRollbackOnly() {
+    return rollbackOnly;
+  }
+
+  boolean isNested() {
+    return nested;
+  }
+
+  boolean isReadOnly() {
+    return readOnly;
+  }
+
+  int getTimeout() {
+    return timeout;
+  }
+
+  int getRetryAttempts() {
+    return retryAttempts;
+  }
+
+  /**
+   * Checks whether a failed unit of work can be retried, that is when the error or one of its causes is of a retryable
+   * type or is a {@link SQLException} with a retryable SQLState.
+   *
+   * @param t
+   *          the error which made the unit of work fail
+   *
+   * @return true if the unit of work can be retried
+   */
+  boolean isRetryable(Throwable t) {
+    // a cause chain may be cyclic, each throwable is inspected once
+    Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Throwable cause = t; cause != null && visited.add(cause); cause = cause.getCause()) {
+      for (Class<? extends Throwable> retryType : retryOn) {
+        if (retryType.isInstance(cause)) {
+          return true;
+        }
+      }
+      if (cause instanceof SQLException && isRetryable((SQLException) cause)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isRetryable(SQLException e) {
+    Set<SQLException> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (SQLException next = e; next != null && visited.add(next); next = next.getNextException()) {
+      if (next.getSQLState() != null && retrySqlStates.contains(next.getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the delay before the next attempt, exponential with jitter, at most {@link #MAX_RETRY_DELAY}.
+   *
+   * @param attempt
+   *          the number of the attempt which just failed, starting from 1
+   *
+   * @return the delay in milliseconds
+   */
+  long getRetryDelay(int attempt) {
+    int shift = Math.min(attempt - 1, 16);
+    long backoff = retryBackoff > MAX_RETRY_DELAY >> shift ? MAX_RETRY_DELAY : retryBackoff << shift;
+    return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+  }
+
+  Class<? extends Throwable> getRethrowExceptionsAs() {
+    return rethrowExceptionsAs;
+  }
+
+  /**
+   * Returns the custom exception message format, {@code null} when not set.
+   *
+   * @return the custom exception message format
+   */
+  String getExceptionMessage() {
+    return exceptionMessage;
+  }
+
+  Class<?>[] getRethrowConstructorTypes() {
+    return rethrowConstructorTypes;
+  }
+
+  /**
+   * Returns the constructor used to wrap the caught exceptions, {@code null} if the rethrow type does not declare a
+   * suitable one.
+   *
+   * @return the rethrow constructor
+   */
+  Constructor<? extends Throwable> getRethrowConstructor() {
+    return rethrowConstructor;
+  }
+
+  String getDebugPrefix() {
+    return debugPrefix;
+  }
+
+  /**
+   * Checks whether an exception of the given type has to be re-thrown as is, that is when it is declared by the
+   * intercepted method or when it already is of the rethrow type.
+   *
+   * @param throwableType
+   *          the caught exception type
+   *
+   * @return true if the exception has not to be wrapped
+   */
+  boolean isRethrownAsIs(Class<? extends Throwable> throwableType) {
+    Boolean rethrownAsIs = rethrownAsIsTypes.get(throwableType);
+    if (rethrownAsIs == null) {
+      rethrownAsIs = rethrownAsIsTypes.computeIfAbsent(throwableType, this::computeRethrownAsIs);
+    }
+    return rethrownAsIs;
+  }
+
+  private Boolean computeRethrownAsIs(Class<?> throwableType) {
+    // check the caught exception is declared in the invoked method
+    for (Class<?> exceptionClass : declaredExceptionTypes) {
+      if (exceptionClass.isAssignableFrom(throwableType)) {
+        return Boolean.TRUE;
+      }
+    }
+
+    // check the caught exception is of same rethrow type
+    return rethrowExceptionsAs.isAssignableFrom(throwableType);
+  }
+
+  @SuppressWarnings("deprecation")
+  private static TransactionIsolationLevel getIsolationLevel(Transactional transactional) {
+    TransactionIsolationLevel isolationLevel = transactional.isolation().getTransactionIsolationLevel();
+
+    // the deprecated attribute applies only when isolation is not set
+    if (isolationLevel == null && transactional.isolationLevel() != TransactionIsolationLevel.NONE) {
+      isolationLevel = transactional.isolationLevel();
+    }
+    return isolationLevel;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E extends Throwable> Constructor<E> getMatchingConstructor(Class<E> type, Class<?>[] argumentsType) {
+    Class<? super E> currentType = type;
+    while (Object.class != currentType) {
+      for (Constructor<?> constructor : currentType.getConstructors()) {
+        if (Arrays.equals(argumentsType, constructor.getParameterTypes())) {
+          return (Constructor<E>) constructor;
+        }
+      }
+      currentType = currentType.getSuperclass();
+    }
+    return null;
+  }
+
+}
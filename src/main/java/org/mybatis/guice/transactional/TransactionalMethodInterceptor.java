@@ -22,34 +22,51 @@ import jakarta.inject.Inject;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
+import org.mybatis.guice.session.SqlSessionContext;
 
 /**
  * Method interceptor for {@link Transactional} annotation.
  */
 public final class TransactionalMethodInterceptor implements MethodInterceptor {
 
-  private static final Class<?>[] CAUSE_TYPES = new Class[] { Throwable.class };
-
-  private static final Class<?>[] MESSAGE_CAUSE_TYPES = new Class[] { String.class, Throwable.class };
-
   /**
    * This class logger.
    */
   private final Log log = LogFactory.getLog(getClass());
 
+  /**
+   * The already resolved intercepted methods.
+   */
+  private final ConcurrentMap<Method, TransactionalMethod> transactionalMethods = new ConcurrentHashMap<>();
+
   /**
    * The {@code SqlSessionManager} reference.
    */
   @Inject
   private SqlSessionManager sqlSessionManager;
 
+  /**
+   * The context of the managed SqlSession, resolved on first use.
+   */
+  private volatile SqlSessionContext sqlSessionContext;
+
   /**
    * Sets the SqlSessionManager instance.
    *
@@ -58,6 +75,16 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
    */
   public void setSqlSessionManager(SqlSessionManager sqlSessionManager) {
     this.sqlSessionManager = sqlSessionManager;
+    this.sqlSessionContext = null;
+  }
+
+  private SqlSessionContext getSqlSessionContext() {
+    SqlSessionContext context = sqlSessionContext;
+    if (context == null) {
+      context = SqlSessionContext.of(sqlSessionManager);
+      sqlSessionContext = context;
+    }
+    return context;
   }
 
   /**
@@ -65,120 +92,419 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
    */
   @Override
   public Object invoke(MethodInvocation invocation) throws Throwable {
-    Method interceptedMethod = invocation.getMethod();
-    Transactional transactional = interceptedMethod.getAnnotation(Transactional.class);
+    return invoke(invocation, getTransactionalMethod(invocation.getMethod()));
+  }
 
-    // The annotation may be present at the class level instead
-    if (transactional == null) {
-      transactional = interceptedMethod.getDeclaringClass().getAnnotation(Transactional.class);
-    }
+  /**
+   * Runs the unit of work of the intercepted method, already resolved by the calling interceptor.
+   *
+   * @param invocation
+   *          the method invocation
+   * @param transactionalMethod
+   *          the descriptor of the intercepted method
+   *
+   * @return the result of the invocation
+   *
+   * @throws Throwable
+   *           the error thrown by the invocation, converted if needed
+   */
+  Object invoke(MethodInvocation invocation, TransactionalMethod transactionalMethod) throws Throwable {
+    // the log level is read once, nothing is allocated for logging unless debug is enabled
+    boolean debug = log.isDebugEnabled();
+
+    if (this.sqlSessionManager.isManagedSessionStarted()) {
+      // the SqlSessionContext, reflective, is only resolved when a unit of work may have to be suspended
+      SqlSessionContext context = SqlSessionContext.hasUnitOfWork(sqlSessionManager) ? getSqlSessionContext() : null;
+      if (context == null || !SqlSessionContext.isUnitOfWork(context.current())) {
+        if (transactionalMethod.isNested()) {
+          return invokeNested(invocation, transactionalMethod, debug);
+        }
+        return invokeInherited(invocation, transactionalMethod, debug);
+      }
 
-    String debugPrefix = null;
-    if (this.log.isDebugEnabled()) {
-      debugPrefix = format("[Intercepted method: %s]", interceptedMethod.toGenericString());
+      // a unit of work is not joined, the transaction runs in its own SqlSession
+      SqlSession unitOfWork = context.suspend();
+      try {
+        return invokeWithRetry(invocation, transactionalMethod, debug);
+      } finally {
+        context.resume(unitOfWork);
+      }
     }
 
-    boolean isSessionInherited = this.sqlSessionManager.isManagedSessionStarted();
+    return invokeWithRetry(invocation, transactionalMethod, debug);
+  }
 
-    if (isSessionInherited) {
-      if (log.isDebugEnabled()) {
-        log.debug(format("%s - SqlSession already set for thread: %s", debugPrefix, currentThread().getId()));
+  private Object invokeWithRetry(MethodInvocation invocation, TransactionalMethod transactionalMethod, boolean debug)
+      throws Throwable {
+    // only the outermost unit of work can be retried, a joined one shares the outer transaction, as does a
+    // SqlSession enlisted in a managed transaction, which the rollback of the failed attempt leaves untouched
+    for (int attempt = 1;; attempt++) {
+      try {
+        return invokeInNewSession(invocation, transactionalMethod, debug);
+      } catch (Throwable t) {
+        if (attempt > transactionalMethod.getRetryAttempts() || !transactionalMethod.isRetryable(t)
+            || isManagedTransaction()) {
+          throw t;
+        }
+        backoff(transactionalMethod, attempt, t, debug);
       }
-    } else {
-      if (log.isDebugEnabled()) {
-        log.debug(
-            format("%s - SqlSession not set for thread: %s, creating a new one", debugPrefix, currentThread().getId()));
+    }
+  }
+
+  /**
+   * Invokes the intercepted method in the SqlSession already managed by the current thread.
+   */
+  private Object invokeInherited(MethodInvocation invocation, TransactionalMethod transactionalMethod, boolean debug)
+      throws Throwable {
+    String debugPrefix = transactionalMethod.getDebugPrefix();
+    if (debug) {
+      log.debug(debugPrefix + " - SqlSession already set for thread: " + currentThread().getId());
+    }
+
+    try {
+      return invocation.proceed();
+    } catch (Throwable t) {
+      throw convertThrowableIfNeeded(invocation, transactionalMethod, t);
+    } finally {
+      if (debug) {
+        log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId()
+            + " is inherited, skipped close operation");
       }
+    }
+  }
+
+  /**
+   * Invokes the intercepted method in a new managed SqlSession, committed or rolled back and closed on return.
+   */
+  private Object invokeInNewSession(MethodInvocation invocation, TransactionalMethod transactionalMethod,
+      boolean debug) throws Throwable {
+    String debugPrefix = transactionalMethod.getDebugPrefix();
+    if (debug) {
+      log.debug(
+          debugPrefix + " - SqlSession not set for thread: " + currentThread().getId() + ", creating a new one");
+    }
 
-      sqlSessionManager.startManagedSession(transactional.executorType(),
-          transactional.isolation().getTransactionIsolationLevel());
+    TransactionContext context = TransactionContext.begin(transactionalMethod.isReadOnly(),
+        transactionalMethod.getTimeout());
+    Connection readOnlyConnection;
+    try {
+      readOnlyConnection = startManagedSession(transactionalMethod);
+    } catch (RuntimeException e) {
+      context.end();
+      throw e;
     }
 
     Object object = null;
-    boolean needsRollback = transactional.rollbackOnly();
+    boolean needsRollback = transactionalMethod.isRollbackOnly();
+    boolean committed = false;
     try {
       object = invocation.proceed();
+      context.checkTimeout();
     } catch (Throwable t) {
       needsRollback = true;
-      throw convertThrowableIfNeeded(invocation, transactional, t);
+      throw convertThrowableIfNeeded(invocation, transactionalMethod, t);
     } finally {
-      if (!isSessionInherited) {
-        try {
-          if (needsRollback) {
-            if (log.isDebugEnabled()) {
-              log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " rolling back");
-            }
-
-            sqlSessionManager.rollback(true);
-          } else {
-            if (log.isDebugEnabled()) {
-              log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " committing");
-            }
-
-            sqlSessionManager.commit(transactional.force());
+      try {
+        if (transactionalMethod.isAutoCommit()) {
+          if (debug) {
+            log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId()
+                + " is in auto commit mode, skipped commit/rollback");
           }
-        } finally {
-          if (log.isDebugEnabled()) {
-            log.debug(format("%s - SqlSession of thread: %s terminated its life-cycle, closing it", debugPrefix,
-                currentThread().getId()));
+          // the statements are committed as they run, whatever the outcome of the method; a read only unit has
+          // nothing to commit
+          committed = !transactionalMethod.isReadOnly();
+        } else if (needsRollback) {
+          if (debug) {
+            log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " rolling back");
           }
 
-          sqlSessionManager.close();
+          sqlSessionManager.rollback(true);
+        } else if (transactionalMethod.isReadOnly()) {
+          if (debug) {
+            log.debug(
+                debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " is read only, skipped commit");
+          }
+          // rolled back on close
+        } else {
+          if (debug) {
+            log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " committing");
+          }
+
+          sqlSessionManager.commit(transactionalMethod.isForce());
+          committed = true;
+        }
+      } finally {
+        if (debug) {
+          log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId()
+              + " terminated its life-cycle, closing it");
+        }
+
+        try {
+          closeManagedSession(readOnlyConnection, context);
+        } finally {
+          // callbacks run outside of the unit of work, once its connection is released
+          context.afterCompletion(committed);
         }
-      } else if (log.isDebugEnabled()) {
-        log.debug(format("%s - SqlSession of thread: %s is inherited, skipped close operation", debugPrefix,
-            currentThread().getId()));
       }
     }
 
     return object;
   }
 
-  private Throwable convertThrowableIfNeeded(MethodInvocation invocation, Transactional transactional, Throwable t) {
-    Method interceptedMethod = invocation.getMethod();
+  /**
+   * Waits before the next attempt of a unit of work which failed with a retryable error.
+   *
+   * @throws Throwable
+   *           the retryable error, if the current thread is interrupted while waiting
+   */
+  private void backoff(TransactionalMethod transactionalMethod, int attempt, Throwable t, boolean debug)
+      throws Throwable {
+    long delay = transactionalMethod.getRetryDelay(attempt);
+    if (debug) {
+      log.debug(transactionalMethod.getDebugPrefix() + " - SqlSession of thread: " + currentThread().getId()
+          + " failed with a retryable error, retrying (" + attempt + "/" + transactionalMethod.getRetryAttempts()
+          + ") in " + delay + " ms. Cause: " + t);
+    }
+
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        currentThread().interrupt();
+        throw t;
+      }
+    }
+  }
+
+  /**
+   * Starts the managed SqlSession for the intercepted method.
+   *
+   * @param transactionalMethod
+   *          the intercepted method descriptor
+   *
+   * @return the connection switched to read only mode, null if the unit of work is not read only
+   */
+  private Connection startManagedSession(TransactionalMethod transactionalMethod) {
+    TransactionIsolationLevel autoCommitIsolationLevel = null;
+    if (transactionalMethod.isAutoCommit()) {
+      sqlSessionManager.startManagedSession(transactionalMethod.getExecutorType(), true);
+      autoCommitIsolationLevel = transactionalMethod.getIsolationLevel();
+    } else {
+      sqlSessionManager.startManagedSession(transactionalMethod.getExecutorType(),
+          transactionalMethod.getIsolationLevel());
+    }
+
+    // connections enlisted in a managed transaction are left untouched
+    boolean readOnly = transactionalMethod.isReadOnly() && !isManagedTransaction();
+    if (!readOnly && autoCommitIsolationLevel == null) {
+      return null;
+    }
+
+    try {
+      Connection connection = sqlSessionManager.getConnection();
+      if (autoCommitIsolationLevel != null) {
+        // SqlSessionManager cannot start an auto commit session with an isolation level
+        connection.setTransactionIsolation(autoCommitIsolationLevel.getLevel());
+      }
+      if (!readOnly) {
+        return null;
+      }
+      connection.setReadOnly(true);
+      return connection;
+    } catch (SQLException | RuntimeException e) {
+      sqlSessionManager.close();
+      throw new PersistenceException("Error setting up the managed SqlSession connection. Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Checks whether the SqlSessions take part in a transaction managed by the container, i.e. a JTA one.
+   *
+   * @return true if the environment transaction factory is a {@link ManagedTransactionFactory}
+   */
+  private boolean isManagedTransaction() {
+    return sqlSessionManager.getConfiguration().getEnvironment()
+        .getTransactionFactory() instanceof ManagedTransactionFactory;
+  }
 
-    // check the caught exception is declared in the invoked method
-    for (Class<?> exceptionClass : interceptedMethod.getExceptionTypes()) {
-      if (exceptionClass.isAssignableFrom(t.getClass())) {
-        return t;
+  private void closeManagedSession(Connection readOnlyConnection, TransactionContext context) {
+    try {
+      if (readOnlyConnection != null) {
+        try {
+          // ends the read only transaction before leaving read only mode; it is rolled back, as setting auto commit
+          // would commit the writes of drivers ignoring the read only hint
+          if (!readOnlyConnection.getAutoCommit()) {
+            readOnlyConnection.rollback();
+          }
+          readOnlyConnection.setReadOnly(false);
+        } catch (SQLException e) {
+          throw new PersistenceException("Error resetting read only connection. Cause: " + e, e);
+        }
       }
+    } finally {
+      try {
+        sqlSessionManager.close();
+      } finally {
+        context.end();
+      }
+    }
+  }
+
+  /**
+   * Invokes a {@link Propagation#NESTED} method inside a savepoint of the inherited SqlSession.
+   *
+   * @param invocation
+   *          the method invocation
+   * @param transactionalMethod
+   *          the intercepted method descriptor
+   * @param debug
+   *          whether debug logging is enabled
+   *
+   * @return the method invocation result
+   *
+   * @throws Throwable
+   *           the method invocation failure
+   */
+  private Object invokeNested(MethodInvocation invocation, TransactionalMethod transactionalMethod, boolean debug)
+      throws Throwable {
+    String debugPrefix = transactionalMethod.getDebugPrefix();
+
+    if (debug) {
+      log.debug(debugPrefix + " - SqlSession already set for thread: " + currentThread().getId()
+          + ", setting a savepoint");
+    }
+
+    // statements still batched belong to the enclosing unit of work
+    sqlSessionManager.flushStatements();
+
+    Connection connection = sqlSessionManager.getConnection();
+    Savepoint savepoint;
+    try {
+      savepoint = connection.setSavepoint();
+    } catch (SQLException e) {
+      throw new PersistenceException("Error setting savepoint. Cause: " + e, e);
     }
 
-    // check the caught exception is of same rethrow type
-    if (transactional.rethrowExceptionsAs().isAssignableFrom(t.getClass())) {
+    // the callbacks registered inside the savepoint are discarded with it
+    TransactionContext context = TransactionContext.current();
+    int registered = context != null ? context.getSynchronizationCount() : 0;
+
+    Object object;
+    try {
+      object = invocation.proceed();
+
+      // statements still batched belong to this nested unit of work
+      sqlSessionManager.flushStatements();
+    } catch (Throwable t) {
+      if (debug) {
+        log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " rolling back to savepoint");
+      }
+
+      try {
+        rollbackToSavepoint(connection, savepoint, context, registered);
+      } catch (RuntimeException e) {
+        t.addSuppressed(e);
+      }
+      throw convertThrowableIfNeeded(invocation, transactionalMethod, t);
+    }
+
+    if (transactionalMethod.isRollbackOnly()) {
+      if (debug) {
+        log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " rolling back to savepoint");
+      }
+
+      rollbackToSavepoint(connection, savepoint, context, registered);
+    } else {
+      if (debug) {
+        log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " releasing savepoint");
+      }
+
+      try {
+        connection.releaseSavepoint(savepoint);
+      } catch (SQLFeatureNotSupportedException e) {
+        // the savepoint is released anyway when the enclosing transaction ends
+      } catch (SQLException e) {
+        throw new PersistenceException("Error releasing savepoint. Cause: " + e, e);
+      }
+    }
+
+    return object;
+  }
+
+  private void rollbackToSavepoint(Connection connection, Savepoint savepoint, TransactionContext context,
+      int registered) {
+    if (context != null) {
+      context.discardSynchronizations(registered);
+    }
+
+    try {
+      // run the statements still batched, so that the rollback discards them too
+      sqlSessionManager.flushStatements();
+    } catch (PersistenceException e) {
+      // the batch is cleared even when it fails
+    }
+
+    try {
+      connection.rollback(savepoint);
+    } catch (SQLException e) {
+      throw new PersistenceException("Error rolling back to savepoint. Cause: " + e, e);
+    } finally {
+      // the local cache may hold rolled back data
+      sqlSessionManager.clearCache();
+    }
+  }
+
+  /**
+   * Returns the descriptor of the given intercepted method, resolving it on first use.
+   *
+   * @param interceptedMethod
+   *          the intercepted method
+   *
+   * @return the descriptor of the intercepted method
+   */
+  TransactionalMethod getTransactionalMethod(Method interceptedMethod) {
+    TransactionalMethod transactionalMethod = transactionalMethods.get(interceptedMethod);
+    if (transactionalMethod == null) {
+      transactionalMethod = transactionalMethods.computeIfAbsent(interceptedMethod, TransactionalMethod::resolve);
+    }
+    return transactionalMethod;
+  }
+
+  private Throwable convertThrowableIfNeeded(MethodInvocation invocation, TransactionalMethod transactionalMethod,
+      Throwable t) {
+    if (transactionalMethod.isRethrownAsIs(t.getClass())) {
       return t;
     }
 
+    Class<? extends Throwable> rethrowExceptionsAs = transactionalMethod.getRethrowExceptionsAs();
+
     // rethrow the exception as new exception
     String errorMessage;
     Object[] initargs;
-    Class<?>[] initargsType;
+    Class<?>[] initargsType = transactionalMethod.getRethrowConstructorTypes();
 
-    if (!transactional.exceptionMessage().isEmpty()) {
-      errorMessage = format(transactional.exceptionMessage(), invocation.getArguments());
+    if (transactionalMethod.getExceptionMessage() != null) {
+      errorMessage = format(transactionalMethod.getExceptionMessage(), invocation.getArguments());
       initargs = new Object[] { errorMessage, t };
-      initargsType = MESSAGE_CAUSE_TYPES;
     } else {
       initargs = new Object[] { t };
-      initargsType = CAUSE_TYPES;
     }
 
-    Constructor<? extends Throwable> exceptionConstructor = getMatchingConstructor(transactional.rethrowExceptionsAs(),
-        initargsType);
+    Constructor<? extends Throwable> exceptionConstructor = transactionalMethod.getRethrowConstructor();
     Throwable rethrowEx = null;
     if (exceptionConstructor != null) {
       try {
         rethrowEx = exceptionConstructor.newInstance(initargs);
       } catch (Exception e) {
         errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s argument(s).",
-            transactional.rethrowExceptionsAs().getName(), Arrays.toString(initargsType));
+            rethrowExceptionsAs.getName(), Arrays.toString(initargsType));
         log.error(errorMessage, e);
         rethrowEx = new RuntimeException(errorMessage, e);
       }
     } else {
       errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s or %s argument(s).",
-          transactional.rethrowExceptionsAs().getName(), Arrays.toString(CAUSE_TYPES),
-          Arrays.toString(MESSAGE_CAUSE_TYPES));
+          rethrowExceptionsAs.getName(), Arrays.toString(TransactionalMethod.CAUSE_TYPES),
+          Arrays.toString(TransactionalMethod.MESSAGE_CAUSE_TYPES));
       log.error(errorMessage);
       rethrowEx = new RuntimeException(errorMessage);
     }
@@ -186,18 +512,4 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
     return rethrowEx;
   }
 
-  @SuppressWarnings("unchecked")
-  private static <E extends Throwable> Constructor<E> getMatchingConstructor(Class<E> type, Class<?>[] argumentsType) {
-    Class<? super E> currentType = type;
-    while (Object.class != currentType) {
-      for (Constructor<?> constructor : currentType.getConstructors()) {
-        if (Arrays.equals(argumentsType, constructor.getParameterTypes())) {
-          return (Constructor<E>) constructor;
-        }
-      }
-      currentType = currentType.getSuperclass();
-    }
-    return null;
-  }
-
 }
@@ -15,17 +15,24 @@
  */
 package org.mybatis.guice.transactional;
 
-import static java.lang.String.format;
-
 import jakarta.ejb.ApplicationException;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Provider;
+import jakarta.transaction.RollbackException;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.SystemException;
+import jakarta.transaction.Transaction;
 import jakarta.transaction.TransactionManager;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 import javax.transaction.xa.XAResource;
 
@@ -33,10 +40,23 @@ import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSession;
+import org.mybatis.guice.session.SqlSessionContext;
 import org.mybatis.guice.transactional.Transactional.TxType;
 
 /**
  * Method interceptor for {@link Transactional} annotation.
+ * <p>
+ * By default the XAResource of the SqlSessionManager is enlisted in the JTA transaction, next to the connection, so
+ * the TransactionManager always runs a two-phase commit. When the one-phase commit optimization is enabled, the
+ * SqlSessionManager is registered as a {@link Synchronization} instead: it is not a participant anymore, and a
+ * transaction touching a single database is committed by the TransactionManager in one phase, without prepare.
+ * <p>
+ * When a {@link TransactionalMethodInterceptor} is set, the managed SqlSession is run by this interceptor in the same
+ * frame, sharing the resolved method descriptor, instead of chaining the two interceptors.
+ * <p>
+ * The {@link TransactionSynchronization} callbacks registered while a JTA transaction is active are registered in that
+ * transaction, and notified of its outcome.
  */
 public class TxTransactionalMethodInterceptor implements MethodInterceptor {
   /**
@@ -50,7 +70,33 @@ public class TxTransactionalMethodInterceptor implements MethodInterceptor {
   @Inject
   private Provider<XAResource> xaResourceProvider;
 
-  private Map<TxType, TransactionAttributeStrategy> strategies = new HashMap<>();
+  @com.google.inject.Inject(optional = true)
+  private SqlSessionContext sqlSessionContext;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.jta.onePhaseCommit")
+  private boolean onePhaseCommit;
+
+  private TransactionalMethodInterceptor localInterceptor;
+
+  private Map<TxType, TransactionAttributeStrategy> strategies = new EnumMap<>(TxType.class);
+
+  private final ConcurrentMap<Method, TxMethod> txMethods = new ConcurrentHashMap<>();
+
+  /**
+   * The completion callback registered per active transaction.
+   */
+  private final ConcurrentMap<Transaction, EnlistmentSynchronization> enlistedResources = new ConcurrentHashMap<>();
+
+  /**
+   * Probed once, the EJB API is optional.
+   */
+  private final boolean applicationExceptionAvailable = isApplicationExceptionAvailable();
+
+  /**
+   * Caches, per caught exception type, whether it marks the transaction for rollback.
+   */
+  private final ConcurrentMap<Class<?>, Boolean> rollbackDecisions = new ConcurrentHashMap<>();
 
   public TxTransactionalMethodInterceptor() {
     strategies.put(TxType.REQUIRED, new RequiredTransactionAttributeStrategy());
@@ -60,7 +106,63 @@ public class TxTransactionalMethodInterceptor implements MethodInterceptor {
     strategies.put(TxType.NEVER, new NeverTransactionAttributeStrategy());
   }
 
-  private boolean isApplicationExceptionAvailable() {
+  /**
+   * Enables the one-phase commit optimization: the SqlSessionManager is bound to the JTA transactions through a
+   * {@link Synchronization} rather than enlisted as an XAResource.
+   *
+   * @param onePhaseCommit
+   *          true to enable the one-phase commit optimization
+   */
+  public void setOnePhaseCommit(boolean onePhaseCommit) {
+    this.onePhaseCommit = onePhaseCommit;
+  }
+
+  /**
+   * Sets the interceptor running the managed SqlSession inside the JTA transaction, in place of the next interceptor
+   * of the chain.
+   *
+   * @param localInterceptor
+   *          the local interceptor, {@code null} to proceed with the chain
+   */
+  public void setLocalInterceptor(TransactionalMethodInterceptor localInterceptor) {
+    this.localInterceptor = localInterceptor;
+  }
+
+  /**
+   * Checks whether an exception of the given type marks the transaction for rollback, according to its
+   * {@link ApplicationException} settings if any.
+   *
+   * @param throwableType
+   *          the caught exception type
+   *
+   * @return true if the transaction has to be rolled back
+   */
+  boolean shouldTriggerRollback(Class<? extends Throwable> throwableType) {
+    if (!applicationExceptionAvailable) {
+      return true;
+    }
+
+    Boolean rollback = rollbackDecisions.get(throwableType);
+    if (rollback == null) {
+      rollback = rollbackDecisions.computeIfAbsent(throwableType, this::computeShouldTriggerRollback);
+    }
+    return rollback;
+  }
+
+  private Boolean computeShouldTriggerRollback(Class<?> throwableType) {
+    ApplicationException ae = throwableType.getAnnotation(ApplicationException.class);
+    ApplicationException parentAe = findAnnotation(throwableType.getSuperclass(), ApplicationException.class);
+    boolean bothAEsNull = (ae == null && parentAe == null);
+    boolean aeNotNullAndRollback = (ae != null && ae.rollback());
+    boolean parentAeRollbackConditions = false;
+    if (parentAe != null) {
+      parentAeRollbackConditions = (!parentAe.inherited() || parentAe.rollback());
+    }
+    // Combine the simplified conditions
+    return bothAEsNull || aeNotNullAndRollback || parentAeRollbackConditions;
+  }
+
+  private static boolean isApplicationExceptionAvailable() {
     try {
       Class.forName("jakarta.ejb.ApplicationException");
       return true;
@@ -69,7 +171,7 @@ public class TxTransactionalMethodInterceptor implements MethodInterceptor {
     }
   }
 
-  private <A extends Annotation> A findAnnotation(Class<?> clazz, Class<A> annotationClass) {
+  private static <A extends Annotation> A findAnnotation(Class<?> clazz, Class<A> annotationClass) {
     Class<?> current = clazz;
     A annotation = null;
     while (annotation == null && current != null) {
@@ -84,97 +186,247 @@ public class TxTransactionalMethodInterceptor implements MethodInterceptor {
    */
   @Override
   public Object invoke(MethodInvocation invocation) throws Throwable {
-    Method interceptedMethod = invocation.getMethod();
-    Transactional transactional = interceptedMethod.getAnnotation(Transactional.class);
-
-    // The annotation may be present at the class level instead
-    if (transactional == null) {
-      transactional = interceptedMethod.getDeclaringClass().getAnnotation(Transactional.class);
-    }
+    TxMethod txMethod = getTxMethod(invocation.getMethod());
 
-    String debugPrefix = null;
-    if (this.log.isDebugEnabled()) {
-      debugPrefix = String.format("[Intercepted method: %s]", interceptedMethod.toGenericString());
-    }
+    // the log level is read once, nothing is allocated for logging unless debug is enabled
+    boolean debug = log.isDebugEnabled();
+    String debugPrefix = txMethod.transactionalMethod.getDebugPrefix();
 
-    boolean needsRollback = transactional.rollbackOnly();
+    boolean needsRollback = txMethod.transactionalMethod.isRollbackOnly();
     Object object = null;
-    TransactionAttribute attribute = null;
-
-    if (manager != null) {
-      TxType txType = transactional.value();
-      TransactionAttributeStrategy strategy = strategies.get(txType);
-      if (strategy != null) {
-        attribute = strategy.getTransactionAttribute();
-      }
-    }
+    TransactionAttribute attribute = manager != null ? txMethod.attribute : null;
 
     if (attribute == null) {
-      if (log.isDebugEnabled()) {
-        log.debug(format("%s - skip Tx Transaction", debugPrefix));
+      if (debug) {
+        log.debug(debugPrefix + " - skip Tx Transaction");
       }
 
       // without Tx
       try {
-        object = invocation.proceed();
+        object = proceed(invocation, txMethod);
       } catch (Throwable t) {
         throw t;
       }
     } else {
-      if (log.isDebugEnabled()) {
-        log.debug(format("%s - Tx Transaction %s begin", debugPrefix, attribute.name()));
+      if (debug) {
+        log.debug(debugPrefix + " - Tx Transaction " + attribute + " begin");
       }
 
       // with Tx
       TransactionToken tranToken = attribute.begin(manager);
 
-      log.debug("enlistResource XASqlSessionManager");
-      XAResource xaRes = xaResourceProvider.get();
-      tranToken.getActiveTransaction().enlistResource(xaRes);
+      Transaction activeTransaction = tranToken.getActiveTransaction();
+      if (activeTransaction != null) {
+        enlistResource(activeTransaction, debug, debugPrefix);
+      }
 
+      // the TransactionSynchronization callbacks follow the JTA transaction, if any, rather than the SqlSession
+      Consumer<TransactionSynchronization> registrar = activeTransaction == null ? null
+          : synchronization -> registerSynchronization(activeTransaction, synchronization);
+      Consumer<TransactionSynchronization> previousRegistrar = TransactionContext.bindRegistrar(registrar);
       try {
-        if (log.isDebugEnabled()) {
-          log.debug(format("%s - Tx Transaction %s (CompletionAllowed %s) call method", debugPrefix, attribute.name(),
-              tranToken.isCompletionAllowed()));
+        if (debug) {
+          log.debug(debugPrefix + " - Tx Transaction " + attribute + " (CompletionAllowed "
+              + tranToken.isCompletionAllowed() + ") call method");
         }
-        object = invocation.proceed();
+        object = proceed(invocation, txMethod);
 
         if (needsRollback) {
           manager.setRollbackOnly();
         }
 
       } catch (Throwable t) {
-        if (log.isDebugEnabled()) {
-          log.debug(format("%s - Tx Transaction %s (CompletionAllowed %s) rolling back", debugPrefix, attribute.name(),
-              tranToken.isCompletionAllowed()));
+        if (debug) {
+          log.debug(debugPrefix + " - Tx Transaction " + attribute + " (CompletionAllowed "
+              + tranToken.isCompletionAllowed() + ") rolling back");
         }
-        if (isApplicationExceptionAvailable()) {
-          ApplicationException ae = t.getClass().getAnnotation(ApplicationException.class);
-          ApplicationException parentAe = findAnnotation(t.getClass().getSuperclass(), ApplicationException.class);
-          boolean bothAEsNull = (ae == null && parentAe == null);
-          boolean aeNotNullAndRollback = (ae != null && ae.rollback());
-          boolean parentAeRollbackConditions = false;
-          if (parentAe != null) {
-            parentAeRollbackConditions = (!parentAe.inherited() || parentAe.rollback());
-          }
-          boolean shouldTriggerRollback = (bothAEsNull || aeNotNullAndRollback || parentAeRollbackConditions);
-          // Combine the simplified conditions
-          if (shouldTriggerRollback) {
-            manager.setRollbackOnly();
-          }
-        } else {
+        if (shouldTriggerRollback(t.getClass())) {
           manager.setRollbackOnly();
         }
         throw t;
       } finally {
-        if (log.isDebugEnabled()) {
-          log.debug(format("%s - Tx Transaction %s (CompletionAllowed %s) finish", debugPrefix, attribute.name(),
-              tranToken.isCompletionAllowed()));
+        TransactionContext.bindRegistrar(previousRegistrar);
+        if (debug) {
+          log.debug(debugPrefix + " - Tx Transaction " + attribute + " (CompletionAllowed "
+              + tranToken.isCompletionAllowed() + ") finish");
+        }
+        try {
+          attribute.finish(manager, tranToken);
+        } finally {
+          // the parent sessions of the branches completed by another thread, i.e. timed out, are bound again here
+          XASqlSessionManager.resumeDeferredParents();
         }
-        attribute.finish(manager, tranToken);
       }
     }
     return object;
   }
 
+  private Object proceed(MethodInvocation invocation, TxMethod txMethod) throws Throwable {
+    if (localInterceptor != null) {
+      return localInterceptor.invoke(invocation, txMethod.transactionalMethod);
+    }
+    return invocation.proceed();
+  }
+
+  /**
+   * Enlists the XAResource of the SqlSessionManager in the given transaction, once: the nested calls joining the
+   * transaction reuse the resource already enlisted, which is released when the transaction completes.
+   * <p>
+   * With the one-phase commit optimization the parent SqlSession is suspended here, and resumed when the transaction
+   * completes, without enlisting any resource.
+   */
+  private void enlistResource(Transaction transaction, boolean debug, String debugPrefix)
+      throws SystemException, RollbackException {
+    if (enlistedResources.containsKey(transaction)) {
+      if (debug) {
+        log.debug(debugPrefix + " - XASqlSessionManager already enlisted");
+      }
+      return;
+    }
+
+    EnlistmentSynchronization synchronization;
+    if (onePhaseCommit && sqlSessionContext != null) {
+      if (debug) {
+        log.debug(debugPrefix + " - registerSynchronization SqlSessionManager (one-phase commit)");
+      }
+      synchronization = new EnlistmentSynchronization(transaction, true, sqlSessionContext.suspend());
+    } else {
+      if (debug) {
+        log.debug(debugPrefix + " - enlistResource XASqlSessionManager");
+      }
+      transaction.enlistResource(xaResourceProvider.get());
+      synchronization = new EnlistmentSynchronization(transaction, false, null);
+    }
+
+    enlistedResources.put(transaction, synchronization);
+    try {
+      transaction.registerSynchronization(synchronization);
+    } catch (RollbackException | SystemException | RuntimeException e) {
+      synchronization.afterCompletion(Status.STATUS_UNKNOWN);
+      throw e;
+    }
+  }
+
+  private static void registerSynchronization(Transaction transaction, TransactionSynchronization synchronization) {
+    try {
+      transaction.registerSynchronization(new CallbackSynchronization(synchronization));
+    } catch (RollbackException | SystemException e) {
+      throw new IllegalStateException("Error registering synchronization in the JTA transaction. Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Notifies {@link TransactionSynchronization} callbacks of the JTA transaction outcome.
+   */
+  private static final class CallbackSynchronization implements Synchronization {
+
+    private final TransactionSynchronization synchronization;
+
+    private CallbackSynchronization(TransactionSynchronization synchronization) {
+      this.synchronization = synchronization;
+    }
+
+    @Override
+    public void beforeCompletion() {
+      // nothing to do
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      boolean committed = status == Status.STATUS_COMMITTED;
+      if (committed) {
+        synchronization.afterCommit();
+      } else {
+        synchronization.afterRollback();
+      }
+      synchronization.afterCompletion(committed);
+    }
+
+  }
+
+  /**
+   * Releases the per transaction enlistment on completion, and resumes the parent SqlSession suspended by the one-phase
+   * commit optimization if any. The parent SqlSession is only bound again to the thread it was suspended from, a
+   * transaction completed by another thread, i.e. rolled back on timeout, hands it over to that thread.
+   */
+  private final class EnlistmentSynchronization implements Synchronization {
+
+    private final Transaction transaction;
+
+    private final boolean suspended;
+
+    private final SqlSession parentSqlSession;
+
+    private final Thread owner;
+
+    private EnlistmentSynchronization(Transaction transaction, boolean suspended, SqlSession parentSqlSession) {
+      this.transaction = transaction;
+      this.suspended = suspended;
+      this.parentSqlSession = parentSqlSession;
+      this.owner = Thread.currentThread();
+    }
+
+    @Override
+    public void beforeCompletion() {
+      // nothing to do
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      enlistedResources.remove(transaction, this);
+      if (!suspended) {
+        return;
+      }
+
+      if (owner == Thread.currentThread()) {
+        sqlSessionContext.resume(parentSqlSession);
+      } else if (parentSqlSession != null) {
+        XASqlSessionManager.deferResume(owner, sqlSessionContext, parentSqlSession);
+      }
+    }
+
+  }
+
+  /**
+   * Returns the plan of the given intercepted method, resolving it on first use.
+   *
+   * @param interceptedMethod
+   *          the intercepted method
+   *
+   * @return the plan of the intercepted method
+   */
+  TxMethod getTxMethod(Method interceptedMethod) {
+    TxMethod txMethod = txMethods.get(interceptedMethod);
+    if (txMethod == null) {
+      txMethod = txMethods.computeIfAbsent(interceptedMethod, this::resolveTxMethod);
+    }
+    return txMethod;
+  }
+
+  private TxMethod resolveTxMethod(Method interceptedMethod) {
+    TransactionalMethod transactionalMethod = TransactionalMethod.resolve(interceptedMethod);
+    TransactionAttributeStrategy strategy = strategies.get(transactionalMethod.getTransactional().value());
+    return new TxMethod(transactionalMethod, strategy != null ? strategy.getTransactionAttribute() : null);
+  }
+
+  /**
+   * The JTA plan of an intercepted method: its descriptor and its transaction attribute, resolved once so that no
+   * annotation nor strategy lookup happens on the invocation path.
+   */
+  static final class TxMethod {
+
+    final TransactionalMethod transactionalMethod;
+
+    /**
+     * The transaction attribute, {@code null} when the transaction type has no strategy.
+     */
+    final TransactionAttribute attribute;
+
+    TxMethod(TransactionalMethod transactionalMethod, TransactionAttribute attribute) {
+      this.transactionalMethod = transactionalMethod;
+      this.attribute = attribute;
+    }
+
+  }
+
 }
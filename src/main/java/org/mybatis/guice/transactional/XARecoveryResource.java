@@ -0,0 +1,251 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.SQLException;
+
+import javax.sql.XAConnection;
+import javax.sql.XADataSource;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * XAResource resolving, on behalf of a transaction manager recovery scan, the in-doubt branches of a database, i.e. the
+ * branches prepared through an {@link XASqlSessionManager} and left uncompleted by a crash.
+ * <p>
+ * It works on a recovery XAConnection of the database, opened by {@code recover(TMSTARTRSCAN)} and closed by
+ * {@code recover(TMENDRSCAN)}, a branch completed outside of a scan opening its own connection. When the environment
+ * DataSource is a connection pool, the recovery connections come from the pool recovery factory, e.g. the
+ * {@code ResourceRecoveryFactory} of Agroal. Register the resource with the recovery subsystem of the transaction
+ * manager, e.g. through an {@code XAResourceRecoveryHelper} added to the Narayana {@code XARecoveryModule}.
+ */
+public class XARecoveryResource implements XAResource {
+  private static final Log log = LogFactory.getLog(XARecoveryResource.class);
+
+  private final String id;
+
+  private final ConnectionFactory connectionFactory;
+
+  /**
+   * The connection of the current recovery scan, null outside of a scan.
+   */
+  private XAConnection scanConnection;
+
+  /**
+   * Instantiates a new recovery resource.
+   *
+   * @param id
+   *          the id of the environment, for logging
+   * @param connectionFactory
+   *          the factory of the recovery connections
+   */
+  public XARecoveryResource(String id, ConnectionFactory connectionFactory) {
+    if (connectionFactory == null) {
+      throw new IllegalArgumentException("Parameter 'connectionFactory' must be not null");
+    }
+    this.id = id;
+    this.connectionFactory = connectionFactory;
+  }
+
+  /**
+   * Instantiates a new recovery resource working on the connections of the given XADataSource.
+   *
+   * @param id
+   *          the id of the environment, for logging
+   * @param xaDataSource
+   *          the XADataSource
+   *
+   * @return the recovery resource
+   */
+  public static XARecoveryResource of(String id, XADataSource xaDataSource) {
+    if (xaDataSource == null) {
+      throw new IllegalArgumentException("Parameter 'xaDataSource' must be not null");
+    }
+    return new XARecoveryResource(id, xaDataSource::getXAConnection);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public synchronized Xid[] recover(int flags) throws XAException {
+    if ((flags & XAResource.TMSTARTRSCAN) != 0) {
+      closeScanConnection();
+      scanConnection = openConnection();
+    }
+
+    try {
+      Xid[] xids = withConnection(xaResource -> xaResource.recover(flags));
+      if (xids == null) {
+        xids = new Xid[0];
+      }
+
+      if (log.isDebugEnabled()) {
+        log.debug(id + ": recover flag=" + flags + " found " + xids.length + " XID(s)");
+      }
+      return xids;
+    } finally {
+      if ((flags & XAResource.TMENDRSCAN) != 0) {
+        closeScanConnection();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void commit(Xid xid, boolean onePhase) throws XAException {
+    if (log.isDebugEnabled()) {
+      log.debug(id + ": commit recovered XID=" + xid);
+    }
+
+    withConnection(xaResource -> {
+      xaResource.commit(xid, onePhase);
+      return null;
+    });
+  }
+
+  @Override
+  public synchronized void rollback(Xid xid) throws XAException {
+    if (log.isDebugEnabled()) {
+      log.debug(id + ": rollback recovered XID=" + xid);
+    }
+
+    withConnection(xaResource -> {
+      xaResource.rollback(xid);
+      return null;
+    });
+  }
+
+  @Override
+  public synchronized void forget(Xid xid) throws XAException {
+    if (log.isDebugEnabled()) {
+      log.debug(id + ": forget recovered XID=" + xid);
+    }
+
+    withConnection(xaResource -> {
+      xaResource.forget(xid);
+      return null;
+    });
+  }
+
+  @Override
+  public void start(Xid xid, int flags) throws XAException {
+    throw new MyBatisXAException(id + ": recovery resource cannot start XID " + xid, XAException.XAER_PROTO);
+  }
+
+  @Override
+  public void end(Xid xid, int flags) throws XAException {
+    throw new MyBatisXAException(id + ": recovery resource never started on XID " + xid, XAException.XAER_PROTO);
+  }
+
+  @Override
+  public int prepare(Xid xid) throws XAException {
+    throw new MyBatisXAException(id + ": recovery resource never started on XID " + xid, XAException.XAER_PROTO);
+  }
+
+  @Override
+  public boolean isSameRM(XAResource xares) throws XAException {
+    return this == xares;
+  }
+
+  @Override
+  public int getTransactionTimeout() throws XAException {
+    return 0;
+  }
+
+  @Override
+  public boolean setTransactionTimeout(int seconds) throws XAException {
+    return false;
+  }
+
+  /**
+   * Runs a recovery operation with the connection of the current scan, or a new connection outside of a scan.
+   */
+  private <T> T withConnection(RecoveryOperation<T> operation) throws XAException {
+    XAConnection xaConnection = scanConnection;
+    boolean own = xaConnection == null;
+    if (own) {
+      xaConnection = openConnection();
+    }
+
+    try {
+      return operation.apply(xaConnection.getXAResource());
+    } catch (SQLException e) {
+      throw new MyBatisXAException(id + ": cannot get the recovery XAResource. Cause: " + e, XAException.XAER_RMFAIL,
+          e);
+    } finally {
+      if (own) {
+        closeConnection(xaConnection);
+      }
+    }
+  }
+
+  private XAConnection openConnection() throws XAException {
+    XAConnection xaConnection;
+    try {
+      xaConnection = connectionFactory.getXAConnection();
+    } catch (SQLException e) {
+      throw new MyBatisXAException(id + ": cannot open a recovery XAConnection. Cause: " + e, XAException.XAER_RMFAIL,
+          e);
+    }
+    if (xaConnection == null) {
+      throw new MyBatisXAException(id + ": no recovery XAConnection available", XAException.XAER_RMFAIL);
+    }
+    return xaConnection;
+  }
+
+  private void closeScanConnection() {
+    if (scanConnection != null) {
+      closeConnection(scanConnection);
+      scanConnection = null;
+    }
+  }
+
+  private void closeConnection(XAConnection xaConnection) {
+    try {
+      xaConnection.close();
+    } catch (SQLException e) {
+      log.warn(id + ": cannot close the recovery XAConnection. Cause: " + e);
+    }
+  }
+
+  /**
+   * Opens the XAConnections a recovery scan works on.
+   */
+  @FunctionalInterface
+  public interface ConnectionFactory {
+
+    /**
+     * Opens a new recovery connection, closed by the recovery resource once used.
+     *
+     * @return the XAConnection
+     *
+     * @throws SQLException
+     *           if the connection cannot be opened
+     */
+    XAConnection getXAConnection() throws SQLException;
+  }
+
+  @FunctionalInterface
+  private interface RecoveryOperation<T> {
+    T apply(XAResource xaResource) throws SQLException, XAException;
+  }
+
+}
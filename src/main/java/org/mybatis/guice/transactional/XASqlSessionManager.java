@@ -15,10 +15,12 @@
  */
 package org.mybatis.guice.transactional;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -28,7 +30,25 @@ import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionManager;
-
+import org.mybatis.guice.session.SqlSessionContext;
+
+/**
+ * Pseudo XAResource suspending the parent session of the SqlSessionManager for the duration of a transaction branch.
+ * <p>
+ * The branch state and XID are kept in a single immutable snapshot, updated by compare-and-set transitions: the
+ * transaction manager may end or roll back a branch from its timeout thread while the application thread completes it,
+ * and exactly one of the racing transitions wins, the other one failing with a protocol error.
+ * <p>
+ * A branch can be handed off to another thread: {@code end(xid, TMSUSPEND)} detaches the SqlSession bound to the
+ * calling thread and resumes the parent session of that thread, {@code start(xid, TMRESUME)} suspends the parent
+ * session of the calling thread and binds the detached SqlSession to it, so the work goes on with the same connection
+ * and transaction branch. With JTA, delisting the resource with {@code TMSUSPEND} and enlisting it again in the
+ * transaction resumed on the other thread drives these calls.
+ * <p>
+ * The parent session is only bound again to the thread it was suspended from: when the branch is completed by another
+ * thread, i.e. rolled back by the transaction manager reaper, the parent session is handed over to its thread, which
+ * binds it on its next {@code start} or once its JTA transaction is left.
+ */
 public class XASqlSessionManager implements XAResource {
   private static final Log log = LogFactory.getLog(XASqlSessionManager.class);
 
@@ -36,18 +56,35 @@ public class XASqlSessionManager implements XAResource {
   public static final int STARTED = 1;
   public static final int ENDED = 2;
   public static final int PREPARED = 3;
+  public static final int SUSPENDED = 4;
+
+  private static final Branch NO_BRANCH = new Branch(NO_TX, null, null);
 
   private SqlSessionManager sqlSessionManager;
-  private int transactionTimeout;
+  private final SqlSessionContext sqlSessionContext;
+  private volatile int transactionTimeout;
   private String id;
-  private Xid xid;
-  private int state = NO_TX;
+  private final AtomicReference<Branch> branch = new AtomicReference<>(NO_BRANCH);
 
+  /**
+   * The parent sessions suspended per global transaction. A GlobalToken is only read and updated inside the atomic
+   * compute operations of this map, which serialize the branches of the same global transaction.
+   */
   private static ConcurrentHashMap<GlobalKey, GlobalToken> globalTokens = new ConcurrentHashMap<>();
 
+  /**
+   * The parent sessions to bind again to their thread, their branch having been completed by another thread.
+   */
+  private static final ConcurrentHashMap<Thread, List<Runnable>> deferredResumes = new ConcurrentHashMap<>();
+
   public XASqlSessionManager(SqlSessionManager sqlSessionManager) {
+    this(sqlSessionManager, sqlSessionManager.getConfiguration().getEnvironment().getId());
+  }
+
+  XASqlSessionManager(SqlSessionManager sqlSessionManager, String id) {
     this.sqlSessionManager = sqlSessionManager;
-    id = sqlSessionManager.getConfiguration().getEnvironment().getId();
+    this.sqlSessionContext = SqlSessionContext.of(sqlSessionManager);
+    this.id = id;
   }
 
   public String getId() {
@@ -55,10 +92,10 @@ public class XASqlSessionManager implements XAResource {
   }
 
   public int getState() {
-    return state;
+    return branch.get().state;
   }
 
-  private String xlatedState() {
+  private static String xlatedState(int state) {
     switch (state) {
       case NO_TX:
         return "NO_TX";
@@ -68,6 +105,8 @@ public class XASqlSessionManager implements XAResource {
         return "ENDED";
       case PREPARED:
         return "PREPARED";
+      case SUSPENDED:
+        return "SUSPENDED";
       default:
         return "!invalid state (" + state + ")!";
     }
@@ -113,6 +152,10 @@ public class XASqlSessionManager implements XAResource {
   public void forget(Xid xid) throws XAException {
   }
 
+  /**
+   * Returns no branch: the in-doubt branches left by a crash are resolved by an {@link XARecoveryResource} registered
+   * with the transaction manager recovery subsystem.
+   */
   @Override
   public Xid[] recover(int flags) throws XAException {
     return new Xid[0];
@@ -126,11 +169,11 @@ public class XASqlSessionManager implements XAResource {
   @Override
   public void start(Xid xid, int flag) throws XAException {
     if (log.isDebugEnabled()) {
-      log.debug(
-          id + ": call start old state=" + xlatedState() + ", XID=" + xid + ", flag=" + decodeXAResourceFlag(flag));
+      log.debug(id + ": call start old state=" + xlatedState(getState()) + ", XID=" + xid + ", flag="
+          + decodeXAResourceFlag(flag));
     }
 
-    if (flag != XAResource.TMNOFLAGS && flag != XAResource.TMJOIN) {
+    if (flag != XAResource.TMNOFLAGS && flag != XAResource.TMJOIN && flag != XAResource.TMRESUME) {
       throw new MyBatisXAException(id + ": unsupported start flag " + decodeXAResourceFlag(flag),
           XAException.XAER_RMERR);
     }
@@ -139,52 +182,101 @@ public class XASqlSessionManager implements XAResource {
       throw new MyBatisXAException(id + ": XID cannot be null", XAException.XAER_INVAL);
     }
 
-    if (state == NO_TX) {
-      if (this.xid != null) {
-        throw new MyBatisXAException(id + ": resource already started on XID " + this.xid, XAException.XAER_PROTO);
-      } else {
-        if (flag == XAResource.TMJOIN) {
-          throw new MyBatisXAException(id + ": resource not yet started", XAException.XAER_PROTO);
-        } else {
-          if (log.isDebugEnabled()) {
-            log.debug(id + ": OK to start, old state=" + xlatedState() + ", XID=" + xid + ", flag="
-                + decodeXAResourceFlag(flag));
+    // a parent session handed over by a branch completed elsewhere must be bound before being suspended again
+    resumeDeferredParents();
+
+    for (;;) {
+      Branch current = branch.get();
+      switch (current.state) {
+        case NO_TX:
+          if (flag != XAResource.TMNOFLAGS) {
+            throw new MyBatisXAException(id + ": resource not yet started", XAException.XAER_PROTO);
           }
-          this.xid = xid;
-        }
-      }
-    } else if (state == STARTED) {
-      throw new MyBatisXAException(id + ": resource already started on XID " + this.xid, XAException.XAER_PROTO);
-    } else if (state == ENDED) {
-      if (flag == XAResource.TMNOFLAGS) {
-        throw new MyBatisXAException(id + ": resource already registered XID " + this.xid, XAException.XAER_DUPID);
-      } else {
-        if (xid.equals(this.xid)) {
-          if (log.isDebugEnabled()) {
-            log.debug(id + ": OK to join, old state=" + xlatedState() + ", XID=" + xid + ", flag="
-                + decodeXAResourceFlag(flag));
+
+          Branch started = new Branch(STARTED, xid, new GlobalKey(xid.getGlobalTransactionId()));
+          if (branch.compareAndSet(current, started)) {
+            if (log.isDebugEnabled()) {
+              log.debug(id + ": OK to start, old state=" + xlatedState(current.state) + ", XID=" + xid + ", flag="
+                  + decodeXAResourceFlag(flag));
+            }
+
+            try {
+              parentSuspend(xid, started.globalKey);
+            } catch (IllegalStateException e) {
+              branch.compareAndSet(started, NO_BRANCH);
+              throw new MyBatisXAException(id + ": cannot suspend the parent session. Cause: " + e,
+                  XAException.XAER_RMERR, e);
+            }
+            return;
           }
-        } else {
-          throw new MyBatisXAException(id + ": resource already started on XID " + this.xid
-              + " - cannot start it on more than one XID at a time", XAException.XAER_RMERR);
-        }
+          break;
+        case STARTED:
+          throw new MyBatisXAException(id + ": resource already started on XID " + current.xid,
+              XAException.XAER_PROTO);
+        case SUSPENDED:
+          if (flag != XAResource.TMRESUME) {
+            throw new MyBatisXAException(id + ": resource suspended on XID " + current.xid + " - resume it first",
+                XAException.XAER_PROTO);
+          }
+          if (!xid.equals(current.xid)) {
+            throw new MyBatisXAException(
+                id + ": resource suspended on XID " + current.xid + " - cannot resume it on another XID " + xid,
+                XAException.XAER_PROTO);
+          }
+
+          Branch resumed = current.attach();
+          if (branch.compareAndSet(current, resumed)) {
+            if (log.isDebugEnabled()) {
+              log.debug(id + ": OK to resume, old state=" + xlatedState(current.state) + ", XID=" + xid);
+            }
+
+            attachSqlSession(xid, current, resumed);
+            return;
+          }
+          break;
+        case ENDED:
+          if (flag == XAResource.TMNOFLAGS) {
+            throw new MyBatisXAException(id + ": resource already registered XID " + current.xid,
+                XAException.XAER_DUPID);
+          }
+          if (flag == XAResource.TMRESUME) {
+            throw new MyBatisXAException(id + ": resource not suspended on XID " + current.xid,
+                XAException.XAER_PROTO);
+          }
+          if (!xid.equals(current.xid)) {
+            throw new MyBatisXAException(id + ": resource already started on XID " + current.xid
+                + " - cannot start it on more than one XID at a time", XAException.XAER_RMERR);
+          }
+
+          // the parent session is already suspended by this branch, unless it was ended while suspended
+          Branch joined = current.attach();
+          if (branch.compareAndSet(current, joined)) {
+            if (log.isDebugEnabled()) {
+              log.debug(id + ": OK to join, old state=" + xlatedState(current.state) + ", XID=" + xid + ", flag="
+                  + decodeXAResourceFlag(flag));
+            }
+
+            if (current.detached) {
+              attachSqlSession(xid, current, joined);
+            }
+            return;
+          }
+          break;
+        default:
+          throw new MyBatisXAException(id + ": resource already prepared on XID " + current.xid,
+              XAException.XAER_PROTO);
       }
-    } else if (state == PREPARED) {
-      throw new MyBatisXAException(id + ": resource already prepared on XID " + this.xid, XAException.XAER_PROTO);
     }
-
-    state = STARTED;
-    parentSuspend(xid);
   }
 
   @Override
   public void end(Xid xid, int flag) throws XAException {
     if (log.isDebugEnabled()) {
-      log.debug(
-          id + ": call end old state=" + xlatedState() + ", XID=" + xid + " and flag " + decodeXAResourceFlag(flag));
+      log.debug(id + ": call end old state=" + xlatedState(getState()) + ", XID=" + xid + " and flag "
+          + decodeXAResourceFlag(flag));
     }
 
-    if (flag != XAResource.TMSUCCESS && flag != XAResource.TMFAIL) {
+    if (flag != XAResource.TMSUCCESS && flag != XAResource.TMFAIL && flag != XAResource.TMSUSPEND) {
       throw new MyBatisXAException(id + ": unsupported end flag " + decodeXAResourceFlag(flag), XAException.XAER_RMERR);
     }
 
@@ -192,212 +284,338 @@ public class XASqlSessionManager implements XAResource {
       throw new MyBatisXAException(id + ": XID cannot be null", XAException.XAER_INVAL);
     }
 
-    if (state == NO_TX) {
-      throw new MyBatisXAException(id + ": resource never started on XID " + xid, XAException.XAER_PROTO);
-    } else if (state == STARTED) {
-      if (this.xid.equals(xid)) {
-        if (log.isDebugEnabled()) {
-          log.debug(
-              id + ": OK to end, old state=" + xlatedState() + ", XID=" + xid + ", flag=" + decodeXAResourceFlag(flag));
-        }
-      } else {
-        throw new MyBatisXAException(
-            id + ": resource already started on XID " + this.xid + " - cannot end it on another XID " + xid,
-            XAException.XAER_PROTO);
-      }
-    } else if (state == ENDED) {
-      throw new MyBatisXAException(id + ": resource already ended on XID " + xid, XAException.XAER_PROTO);
-    } else if (state == PREPARED) {
-      throw new MyBatisXAException(id + ": cannot end, resource already prepared on XID " + xid,
-          XAException.XAER_PROTO);
-    }
+    for (;;) {
+      Branch current = branch.get();
+      switch (current.state) {
+        case NO_TX:
+          throw new MyBatisXAException(id + ": resource never started on XID " + xid, XAException.XAER_PROTO);
+        case STARTED:
+        case SUSPENDED:
+          if (!xid.equals(current.xid)) {
+            throw new MyBatisXAException(
+                id + ": resource already started on XID " + current.xid + " - cannot end it on another XID " + xid,
+                XAException.XAER_PROTO);
+          }
+          if (flag == XAResource.TMSUSPEND && current.state == SUSPENDED) {
+            throw new MyBatisXAException(id + ": resource already suspended on XID " + xid, XAException.XAER_PROTO);
+          }
 
-    if (flag == XAResource.TMFAIL) {
-      // Rollback transaction. After call method end() call method rollback()
-      if (log.isDebugEnabled()) {
-        log.debug(id + ": after end TMFAIL reset state to ENDED and roolback");
+          if (flag == XAResource.TMSUSPEND) {
+            // the SqlSession of the branch leaves the calling thread, which gets its parent session back
+            SqlSession sqlSession = sqlSessionContext.suspend();
+            if (branch.compareAndSet(current, current.detach(sqlSession))) {
+              if (log.isDebugEnabled()) {
+                log.debug(id + ": OK to suspend, old state=" + xlatedState(current.state) + ", XID=" + xid);
+              }
+
+              parentResume(xid, current.globalKey);
+              return;
+            }
+            sqlSessionContext.resume(sqlSession);
+            break;
+          }
+
+          if (branch.compareAndSet(current, current.to(ENDED))) {
+            if (log.isDebugEnabled()) {
+              log.debug(id + ": OK to end, old state=" + xlatedState(current.state) + ", XID=" + xid + ", flag="
+                  + decodeXAResourceFlag(flag));
+            }
+
+            if (flag == XAResource.TMFAIL) {
+              // Rollback transaction. After call method end() call method rollback()
+              if (log.isDebugEnabled()) {
+                log.debug(id + ": after end TMFAIL reset state to ENDED and roolback");
+              }
+            }
+            return;
+          }
+          break;
+        case ENDED:
+          throw new MyBatisXAException(id + ": resource already ended on XID " + xid, XAException.XAER_PROTO);
+        default:
+          throw new MyBatisXAException(id + ": cannot end, resource already prepared on XID " + xid,
+              XAException.XAER_PROTO);
       }
     }
-
-    this.state = ENDED;
   }
 
   @Override
   public int prepare(Xid xid) throws XAException {
     if (log.isDebugEnabled()) {
-      log.debug(id + ": call prepare old state=" + xlatedState() + ", XID=" + xid);
+      log.debug(id + ": call prepare old state=" + xlatedState(getState()) + ", XID=" + xid);
     }
 
     if (xid == null) {
       throw new MyBatisXAException(id + ": XID cannot be null", XAException.XAER_INVAL);
     }
 
-    if (state == NO_TX) {
-      throw new MyBatisXAException(id + ": resource never started on XID " + xid, XAException.XAER_PROTO);
-    } else if (state == STARTED) {
-      throw new MyBatisXAException(id + ": resource never ended on XID " + xid, XAException.XAER_PROTO);
-    } else if (state == ENDED) {
-      if (this.xid.equals(xid)) {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": OK to prepare, old state=" + xlatedState() + ", XID=" + xid);
-        }
-      } else {
-        throw new MyBatisXAException(
-            id + ": resource already started on XID " + this.xid + " - cannot prepare it on another XID " + xid,
-            XAException.XAER_PROTO);
+    for (;;) {
+      Branch current = branch.get();
+      switch (current.state) {
+        case NO_TX:
+          throw new MyBatisXAException(id + ": resource never started on XID " + xid, XAException.XAER_PROTO);
+        case STARTED:
+        case SUSPENDED:
+          throw new MyBatisXAException(id + ": resource never ended on XID " + xid, XAException.XAER_PROTO);
+        case ENDED:
+          if (!xid.equals(current.xid)) {
+            throw new MyBatisXAException(
+                id + ": resource already started on XID " + current.xid + " - cannot prepare it on another XID " + xid,
+                XAException.XAER_PROTO);
+          }
+
+          if (branch.compareAndSet(current, current.to(PREPARED))) {
+            if (log.isDebugEnabled()) {
+              log.debug(id + ": OK to prepare, old state=" + xlatedState(current.state) + ", XID=" + xid);
+            }
+            return XAResource.XA_OK;
+          }
+          break;
+        default:
+          throw new MyBatisXAException(id + ": resource already prepared on XID " + current.xid,
+              XAException.XAER_PROTO);
       }
-    } else if (state == PREPARED) {
-      throw new MyBatisXAException(id + ": resource already prepared on XID " + this.xid, XAException.XAER_PROTO);
     }
-
-    this.state = PREPARED;
-    return XAResource.XA_OK;
   }
 
   @Override
   public void commit(Xid xid, boolean onePhase) throws XAException {
     if (log.isDebugEnabled()) {
-      log.debug(id + ": call commit old state=" + xlatedState() + ", XID=" + xid + " onePhase is " + onePhase);
+      log.debug(
+          id + ": call commit old state=" + xlatedState(getState()) + ", XID=" + xid + " onePhase is " + onePhase);
     }
 
     if (xid == null) {
       throw new MyBatisXAException(id + ": XID cannot be null", XAException.XAER_INVAL);
     }
 
-    if (state == NO_TX) {
-      throw new MyBatisXAException(id + ": resource never started on XID " + xid, XAException.XAER_PROTO);
-    } else if (state == STARTED) {
-      throw new MyBatisXAException(id + ": resource never ended on XID " + xid, XAException.XAER_PROTO);
-    } else if (state == ENDED) {
-      if (onePhase) {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": OK to commit with 1PC, old state=" + xlatedState() + ", XID=" + xid);
-        }
-      } else {
-        throw new MyBatisXAException(id + ": resource never prepared on XID " + xid, XAException.XAER_PROTO);
-      }
-    } else if (state == PREPARED) {
-      if (!onePhase) {
-        if (this.xid.equals(xid)) {
-          if (log.isDebugEnabled()) {
-            log.debug(id + ": OK to commit, old state=" + xlatedState() + ", XID=" + xid);
+    for (;;) {
+      Branch current = branch.get();
+      switch (current.state) {
+        case NO_TX:
+          throw new MyBatisXAException(id + ": resource never started on XID " + xid, XAException.XAER_PROTO);
+        case STARTED:
+        case SUSPENDED:
+          throw new MyBatisXAException(id + ": resource never ended on XID " + xid, XAException.XAER_PROTO);
+        case ENDED:
+          if (!onePhase) {
+            throw new MyBatisXAException(id + ": resource never prepared on XID " + xid, XAException.XAER_PROTO);
           }
-        } else {
-          throw new MyBatisXAException(
-              id + ": resource already started on XID " + this.xid + " - cannot commit it on another XID " + xid,
-              XAException.XAER_PROTO);
-        }
-      } else {
-        throw new MyBatisXAException(id + ": cannot commit in one phase as resource has been prepared on XID " + xid,
+          break;
+        default:
+          if (onePhase) {
+            throw new MyBatisXAException(
+                id + ": cannot commit in one phase as resource has been prepared on XID " + xid,
+                XAException.XAER_PROTO);
+          }
+          break;
+      }
+
+      if (!xid.equals(current.xid)) {
+        throw new MyBatisXAException(
+            id + ": resource already started on XID " + current.xid + " - cannot commit it on another XID " + xid,
             XAException.XAER_PROTO);
       }
-    }
 
-    try {
-      parentResume(xid);
-    } finally {
-      if (log.isDebugEnabled()) {
-        log.debug(id + ": after commit reset state to NO_TX");
+      if (branch.compareAndSet(current, NO_BRANCH)) {
+        if (log.isDebugEnabled()) {
+          log.debug(id + ": OK to commit" + (onePhase ? " with 1PC" : "") + ", old state=" + xlatedState(current.state)
+              + ", XID=" + xid + ", reset state to NO_TX");
+        }
+
+        complete(xid, current);
+        return;
       }
-      this.state = NO_TX;
-      this.xid = null;
     }
   }
 
   @Override
   public void rollback(Xid xid) throws XAException {
     if (log.isDebugEnabled()) {
-      log.debug(id + ": call roolback old state=" + xlatedState() + ", XID=" + xid);
+      log.debug(id + ": call roolback old state=" + xlatedState(getState()) + ", XID=" + xid);
     }
 
     if (xid == null) {
       throw new MyBatisXAException(id + ": XID cannot be null", XAException.XAER_INVAL);
     }
 
-    if (state == NO_TX) {
-      throw new MyBatisXAException(id + ": resource never started on XID " + xid, XAException.XAER_PROTO);
-    } else if (state == STARTED) {
-      throw new MyBatisXAException(id + ": resource never ended on XID " + xid, XAException.XAER_PROTO);
-    } else if (state == ENDED) {
-      if (this.xid.equals(xid)) {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": OK to rollback, old state=" + xlatedState() + ", XID=" + xid);
-        }
-      } else {
+    for (;;) {
+      Branch current = branch.get();
+      switch (current.state) {
+        case NO_TX:
+          throw new MyBatisXAException(id + ": resource never started on XID " + xid, XAException.XAER_PROTO);
+        case STARTED:
+        case SUSPENDED:
+          throw new MyBatisXAException(id + ": resource never ended on XID " + xid, XAException.XAER_PROTO);
+        default:
+          break;
+      }
+
+      if (!xid.equals(current.xid)) {
         throw new MyBatisXAException(
-            id + ": resource already started on XID " + this.xid + " - cannot roll it back on another XID " + xid,
+            id + ": resource already started on XID " + current.xid + " - cannot roll it back on another XID " + xid,
             XAException.XAER_PROTO);
       }
-    } else if (state == PREPARED) {
-      if (log.isDebugEnabled()) {
-        log.debug(id + ": rollback reset state from PREPARED to NO_TX");
+
+      if (branch.compareAndSet(current, NO_BRANCH)) {
+        if (log.isDebugEnabled()) {
+          log.debug(id + ": OK to rollback, old state=" + xlatedState(current.state) + ", XID=" + xid
+              + ", reset state to NO_TX");
+        }
+
+        complete(xid, current);
+
+        if (current.state == PREPARED) {
+          throw new MyBatisXAException(id + ": resource committed during prepare on XID " + xid,
+              XAException.XA_HEURCOM);
+        }
+        return;
       }
-      this.state = NO_TX;
-      throw new MyBatisXAException(id + ": resource committed during prepare on XID " + this.xid,
-          XAException.XA_HEURCOM);
     }
+  }
 
+  /**
+   * Binds the SqlSession detached from the given branch to the calling thread, suspending its parent session.
+   */
+  private void attachSqlSession(Xid xid, Branch detached, Branch attached) throws XAException {
     try {
-      parentResume(xid);
-    } finally {
+      parentSuspend(xid, detached.globalKey);
+    } catch (IllegalStateException e) {
+      branch.compareAndSet(attached, detached);
+      throw new MyBatisXAException(id + ": cannot suspend the parent session. Cause: " + e, XAException.XAER_RMERR, e);
+    }
+    sqlSessionContext.resume(detached.detachedSqlSession);
+  }
+
+  /**
+   * Resumes the parent session suspended by the completed branch, or closes the SqlSession left detached when the
+   * branch was ended while suspended.
+   */
+  private void complete(Xid xid, Branch completed) {
+    if (!completed.detached) {
+      parentResume(xid, completed.globalKey);
+    } else if (completed.detachedSqlSession != null) {
       if (log.isDebugEnabled()) {
-        log.debug(id + ": after rollback reset state to NO_TX");
+        log.debug(id + ": close detached session " + xid);
       }
-      this.state = NO_TX;
-      this.xid = null;
+
+      completed.detachedSqlSession.close();
     }
   }
 
-  private void parentSuspend(Xid xid) {
+  private void parentSuspend(Xid xid, GlobalKey globalKey) {
     if (log.isDebugEnabled()) {
       log.debug(id + ": suspend parent session " + xid);
     }
 
-    byte[] trId = xid.getGlobalTransactionId();
-    GlobalKey key = new GlobalKey(trId);
-    GlobalToken globalToken = globalTokens.get(key);
-
-    if (globalToken == null) {
-      if (log.isDebugEnabled()) {
-        log.debug(id + ": add GlobalToken " + key);
-      }
+    globalTokens.compute(globalKey, (key, globalToken) -> {
+      if (globalToken == null) {
+        if (log.isDebugEnabled()) {
+          log.debug(id + ": add GlobalToken " + key);
+        }
 
-      globalTokens.put(key, globalToken = new GlobalToken());
-    } else {
-      if (log.isDebugEnabled()) {
-        log.debug(id + ": present GlobalToken " + key);
+        globalToken = new GlobalToken();
+      } else {
+        if (log.isDebugEnabled()) {
+          log.debug(id + ": present GlobalToken " + key);
+        }
       }
-    }
-    globalToken.parentSuspend(id, sqlSessionManager);
+      globalToken.parentSuspend(id, sqlSessionManager);
+      return globalToken;
+    });
   }
 
-  private void parentResume(Xid xid) {
+  private void parentResume(Xid xid, GlobalKey globalKey) {
     if (log.isDebugEnabled()) {
       log.debug(id + ": resume parent session " + xid);
     }
 
-    byte[] trId = xid.getGlobalTransactionId();
-    GlobalKey key = new GlobalKey(trId);
-    GlobalToken globalToken = globalTokens.get(key);
-
-    if (globalToken != null) {
+    GlobalToken remaining = globalTokens.computeIfPresent(globalKey, (k, globalToken) -> {
       globalToken.parentResume(id, sqlSessionManager);
 
       if (globalToken.isEmpty()) {
         if (log.isDebugEnabled()) {
-          log.debug(id + ": remove GlobalToken " + key);
+          log.debug(id + ": remove GlobalToken " + k);
         }
 
-        globalTokens.remove(key);
-      } else {
-        if (log.isDebugEnabled()) {
-          log.debug(id + ": not remove GlobalToken " + key);
-        }
+        return null;
       }
-    } else {
+
       if (log.isDebugEnabled()) {
-        log.debug(id + ": not find GlobalToken " + key);
+        log.debug(id + ": not remove GlobalToken " + k);
       }
+      return globalToken;
+    });
+
+    if (remaining == null && log.isDebugEnabled()) {
+      log.debug(id + ": no more GlobalToken " + globalKey);
+    }
+  }
+
+  /**
+   * Binds again to the current thread the parent sessions which were suspended from it, their branch having been
+   * completed by another thread meanwhile.
+   */
+  static void resumeDeferredParents() {
+    if (deferredResumes.isEmpty()) {
+      return;
+    }
+
+    List<Runnable> resumes = deferredResumes.remove(Thread.currentThread());
+    if (resumes != null) {
+      resumes.forEach(Runnable::run);
+    }
+  }
+
+  /**
+   * Hands the given parent session over to the thread it was suspended from, to be bound by
+   * {@link #resumeDeferredParents()} on that thread.
+   */
+  static void deferResume(Thread owner, SqlSessionContext sqlSessionContext, SqlSession sqlSession) {
+    // the threads which ended without resuming their parent sessions are forgotten
+    deferredResumes.keySet().removeIf(thread -> !thread.isAlive());
+    deferredResumes.compute(owner, (thread, resumes) -> {
+      List<Runnable> deferred = resumes != null ? resumes : new ArrayList<>();
+      deferred.add(() -> sqlSessionContext.resume(sqlSession));
+      return deferred;
+    });
+  }
+
+  /**
+   * Immutable snapshot of the branch state, replaced as a whole on each transition.
+   */
+  private static final class Branch {
+    final int state;
+    final Xid xid;
+    final GlobalKey globalKey;
+    /**
+     * Whether the branch is detached from any thread, after a TMSUSPEND, its parent session not being suspended.
+     */
+    final boolean detached;
+    final SqlSession detachedSqlSession;
+
+    Branch(int state, Xid xid, GlobalKey globalKey) {
+      this(state, xid, globalKey, false, null);
+    }
+
+    private Branch(int state, Xid xid, GlobalKey globalKey, boolean detached, SqlSession detachedSqlSession) {
+      this.state = state;
+      this.xid = xid;
+      this.globalKey = globalKey;
+      this.detached = detached;
+      this.detachedSqlSession = detachedSqlSession;
+    }
+
+    Branch to(int newState) {
+      return new Branch(newState, xid, globalKey, detached, detachedSqlSession);
+    }
+
+    Branch detach(SqlSession sqlSession) {
+      return new Branch(SUSPENDED, xid, globalKey, true, sqlSession);
+    }
+
+    Branch attach() {
+      return new Branch(STARTED, xid, globalKey, false, null);
     }
   }
 
@@ -448,8 +666,12 @@ public class XASqlSessionManager implements XAResource {
     }
   }
 
+  /**
+   * The parent sessions suspended by the branches of a global transaction, per SqlSessionManager. Not thread safe, see
+   * {@link XASqlSessionManager#globalTokens}.
+   */
   static class GlobalToken {
-    private final Log log = LogFactory.getLog(getClass());
+    private static final Log log = LogFactory.getLog(GlobalToken.class);
     IdentityHashMap<SqlSessionManager, Token> tokens = new IdentityHashMap<SqlSessionManager, XASqlSessionManager.Token>();
 
     public GlobalToken() {
@@ -500,22 +722,20 @@ public class XASqlSessionManager implements XAResource {
   }
 
   static class Token {
-    private final Log log = LogFactory.getLog(getClass());
+    private static final Log log = LogFactory.getLog(Token.class);
     final SqlSessionManager sqlSessionManager;
-    ThreadLocal<SqlSession> localSqlSession;
+    final SqlSessionContext sqlSessionContext;
     SqlSession suspendedSqlSession;
+    /**
+     * The thread the parent session has been suspended from.
+     */
+    Thread owner;
     int count;
 
-    @SuppressWarnings("unchecked")
     public Token(SqlSessionManager sqlSessionManager) {
       this.sqlSessionManager = sqlSessionManager;
+      this.sqlSessionContext = SqlSessionContext.of(sqlSessionManager);
       this.count = 0;
-      try {
-        Field field = SqlSessionManager.class.getDeclaredField("localSqlSession");
-        field.setAccessible(true);
-        localSqlSession = (ThreadLocal<SqlSession>) field.get(sqlSessionManager);
-      } catch (Exception e) {
-      }
     }
 
     boolean isFirst() {
@@ -528,10 +748,8 @@ public class XASqlSessionManager implements XAResource {
           log.debug(id + " suspend parent session");
         }
 
-        if (localSqlSession != null) {
-          suspendedSqlSession = localSqlSession.get();
-          localSqlSession.remove();
-        }
+        suspendedSqlSession = sqlSessionContext.suspend();
+        owner = Thread.currentThread();
       } else {
         if (log.isDebugEnabled()) {
           log.debug(id + " skip suspend parent session");
@@ -546,18 +764,21 @@ public class XASqlSessionManager implements XAResource {
       }
 
       if (isFirst()) {
-        if (log.isDebugEnabled()) {
-          log.debug(id + " resume parent session");
-        }
+        if (owner == null || owner == Thread.currentThread()) {
+          if (log.isDebugEnabled()) {
+            log.debug(id + " resume parent session");
+          }
 
-        if (localSqlSession != null) {
-          if (suspendedSqlSession == null) {
-            localSqlSession.remove();
-          } else {
-            localSqlSession.set(suspendedSqlSession);
-            suspendedSqlSession = null;
+          sqlSessionContext.resume(suspendedSqlSession);
+        } else if (suspendedSqlSession != null) {
+          if (log.isDebugEnabled()) {
+            log.debug(id + " defer resume parent session to thread " + owner.getName());
           }
+
+          deferResume(owner, sqlSessionContext, suspendedSqlSession);
         }
+        suspendedSqlSession = null;
+        owner = null;
       } else {
         if (log.isDebugEnabled()) {
           log.debug(id + " skip resume parent session");
@@ -26,8 +26,15 @@ public class XASqlSessionManagerProvider implements Provider<XAResource> {
   @Inject
   private SqlSessionManager sqlSessionManager;
 
+  private volatile String id;
+
   @Override
   public XAResource get() {
-    return new XASqlSessionManager(sqlSessionManager);
+    String environmentId = id;
+    if (environmentId == null) {
+      // the environment does not change once the SqlSessionManager is built
+      id = environmentId = sqlSessionManager.getConfiguration().getEnvironment().getId();
+    }
+    return new XASqlSessionManager(sqlSessionManager, environmentId);
   }
 }
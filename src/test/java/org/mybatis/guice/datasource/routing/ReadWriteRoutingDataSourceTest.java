@@ -0,0 +1,212 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.multibindings.Multibinder;
+import com.google.inject.name.Names;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mybatis.guice.transactional.Transactional;
+import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+
+@ExtendWith(MockitoExtension.class)
+class ReadWriteRoutingDataSourceTest {
+  private TransactionalMethodInterceptor transactionalMethodInterceptor;
+  @Mock
+  private MethodInvocation invocation;
+  @Mock
+  private SqlSessionManager sqlSessionManager;
+  @Mock
+  private Configuration configuration;
+  @Mock
+  private Environment environment;
+  @Mock
+  private Connection sessionConnection;
+  @Mock
+  private DataSource primary;
+  @Mock
+  private DataSource replica1;
+  @Mock
+  private DataSource replica2;
+  @Mock
+  private Connection primaryConnection;
+  @Mock
+  private Connection replica1Connection;
+  @Mock
+  private Connection replica2Connection;
+
+  @BeforeEach
+  void beforeTest() {
+    transactionalMethodInterceptor = new TransactionalMethodInterceptor();
+    transactionalMethodInterceptor.setSqlSessionManager(sqlSessionManager);
+  }
+
+  @Test
+  void getConnection_Write() throws Throwable {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary,
+        Arrays.asList(replica1, replica2));
+    when(primary.getConnection()).thenReturn(primaryConnection);
+
+    assertSame(primaryConnection, dataSource.getConnection());
+    verify(replica1, never()).getConnection();
+    verify(replica2, never()).getConnection();
+  }
+
+  @Test
+  void getConnection_ReadOnly_RoundRobin() throws Throwable {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary,
+        Arrays.asList(replica1, replica2));
+    when(replica1.getConnection()).thenReturn(replica1Connection);
+    when(replica2.getConnection()).thenReturn(replica2Connection);
+
+    assertSame(replica1Connection, readOnly(dataSource::getConnection));
+    assertSame(replica2Connection, readOnly(dataSource::getConnection));
+    assertSame(replica1Connection, readOnly(dataSource::getConnection));
+    verify(primary, never()).getConnection();
+  }
+
+  @Test
+  void getConnection_ReadOnly_FailingReplicaEvicted() throws Throwable {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary,
+        Arrays.asList(replica1, replica2));
+    when(replica1.getConnection()).thenThrow(new SQLException("replica down"));
+    when(replica2.getConnection()).thenReturn(replica2Connection);
+
+    assertSame(replica2Connection, readOnly(dataSource::getConnection));
+    assertSame(replica2Connection, readOnly(dataSource::getConnection));
+    assertSame(replica2Connection, readOnly(dataSource::getConnection));
+    verify(replica1, times(1)).getConnection();
+  }
+
+  @Test
+  void getConnection_ReadOnly_EvictionExpired() throws Throwable {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary,
+        Collections.singletonList(replica1));
+    dataSource.setEvictionMillis(0);
+    when(replica1.getConnection()).thenThrow(new SQLException("replica down")).thenReturn(replica1Connection);
+    when(primary.getConnection()).thenReturn(primaryConnection);
+
+    assertSame(primaryConnection, readOnly(dataSource::getConnection));
+    assertSame(replica1Connection, readOnly(dataSource::getConnection));
+  }
+
+  @Test
+  void getConnection_ReadOnly_NoReplicaAvailable() throws Throwable {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary,
+        Arrays.asList(replica1, replica2));
+    when(replica1.getConnection()).thenThrow(new SQLException("replica down"));
+    when(replica2.getConnection()).thenThrow(new SQLException("replica down"));
+    when(primary.getConnection()).thenReturn(primaryConnection);
+
+    assertSame(primaryConnection, readOnly(dataSource::getConnection));
+    assertSame(primaryConnection, readOnly(dataSource::getConnection));
+    verify(replica1, times(1)).getConnection();
+    verify(replica2, times(1)).getConnection();
+  }
+
+  @Test
+  void getConnection_ReadOnly_LeastOutstanding() throws Throwable {
+    ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary,
+        Arrays.asList(replica1, replica2));
+    dataSource.setReplicaSelection(ReplicaSelection.LEAST_OUTSTANDING);
+    when(replica1.getConnection()).thenReturn(replica1Connection);
+    when(replica2.getConnection()).thenReturn(replica2Connection);
+
+    Connection first = readOnly(dataSource::getConnection);
+    Connection second = readOnly(dataSource::getConnection);
+    first.close();
+    first.close();
+    Connection third = readOnly(dataSource::getConnection);
+
+    verify(replica1, times(2)).getConnection();
+    verify(replica2, times(1)).getConnection();
+    verify(replica1Connection, times(2)).close();
+    second.close();
+    verify(replica2Connection).close();
+    third.close();
+  }
+
+  @Test
+  void provider() throws Throwable {
+    Injector injector = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(DataSource.class).annotatedWith(Primary.class).toInstance(primary);
+        Multibinder<DataSource> replicas = Multibinder.newSetBinder(binder(), DataSource.class, Replica.class);
+        replicas.addBinding().toInstance(replica1);
+        bindConstant().annotatedWith(Names.named("mybatis.routing.replicaSelection"))
+            .to(ReplicaSelection.LEAST_OUTSTANDING);
+        bindConstant().annotatedWith(Names.named("mybatis.routing.evictionMillis")).to(1000L);
+      }
+    });
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    when(replica1.getConnection()).thenReturn(replica1Connection);
+
+    DataSource dataSource = injector.getInstance(ReadWriteRoutingDataSourceProvider.class).get();
+
+    assertSame(primaryConnection, dataSource.getConnection());
+    Connection connection = readOnly(dataSource::getConnection);
+    connection.close();
+    verify(replica1Connection).close();
+    assertEquals(ReadWriteRoutingDataSource.class, dataSource.getClass());
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T readOnly(Callable<T> callable) throws Throwable {
+    Method method = ReadOnlyService.class.getMethod("read");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> callable.call());
+    when(sqlSessionManager.getConfiguration()).thenReturn(configuration);
+    when(configuration.getEnvironment()).thenReturn(environment);
+    when(environment.getTransactionFactory()).thenReturn(new JdbcTransactionFactory());
+    when(sqlSessionManager.getConnection()).thenReturn(sessionConnection);
+    return (T) transactionalMethodInterceptor.invoke(invocation);
+  }
+
+  private static class ReadOnlyService {
+    @Transactional(readOnly = true)
+    public void read() {
+    }
+  }
+}
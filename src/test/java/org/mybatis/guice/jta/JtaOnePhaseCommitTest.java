@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.jta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.PrivateModule;
+
+import jakarta.transaction.TransactionManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+import javax.transaction.xa.XAResource;
+
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.VendorDatabaseIdProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.mybatis.guice.MyBatisJtaModule;
+import org.mybatis.guice.transactional.XASqlSessionManagerProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class JtaOnePhaseCommitTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JtaOnePhaseCommitTest.class);
+
+  static TransactionManager manager;
+  static DataSource dataSource2;
+
+  @BeforeAll
+  static void setUpBeforeClass() throws Exception {
+    Class.forName("org.apache.derby.jdbc.EmbeddedDriver").getDeclaredConstructor().newInstance();
+    LogFactory.useSlf4jLogging();
+
+    manager = com.arjuna.ats.jta.TransactionManager.transactionManager();
+
+    dataSource2 = BaseDB.createLocalDataSource(BaseDB.URL_DB2, manager);
+  }
+
+  @AfterAll
+  static void tearDownAfterClass() throws Exception {
+    BaseDB.dropTable(BaseDB.URL_DB2);
+  }
+
+  private Injector injector;
+
+  JtaService2Impl service;
+
+  @BeforeEach
+  void setup(TestInfo testInfo) {
+    LOGGER.info("********************************************************************************");
+    LOGGER.info("Testing: {}({})", testInfo.getTestMethod(), getClass().getName());
+    LOGGER.info("********************************************************************************");
+    LogFactory.useSlf4jLogging();
+    CountingXaResourceProvider.calls.set(0);
+
+    LOGGER.info("create injector");
+    injector = Guice.createInjector(new PrivateModule() {
+
+      @Override
+      protected void configure() {
+        install(new MyBatisJtaModule(manager) {
+
+          @Override
+          protected void initialize() {
+            environmentId("db2");
+            bindDataSourceProvider(new ProviderImpl<DataSource>(dataSource2));
+            bindDefaultTransactionProvider();
+            bindDatabaseIdProvider(new VendorDatabaseIdProvider());
+            bindXAResourceProvider(CountingXaResourceProvider.class);
+            useOnePhaseCommit(true);
+
+            addMapperClass(JtaMapper.class);
+
+            bind(JtaService2Impl.class);
+          }
+        });
+
+        expose(JtaService2Impl.class);
+      }
+    });
+
+    service = injector.getInstance(JtaService2Impl.class);
+  }
+
+  @AfterEach
+  void tearDown(TestInfo testInfo) throws Exception {
+    BaseDB.clearTable(BaseDB.URL_DB2);
+
+    LOGGER.info("********************************************************************************");
+    LOGGER.info("Testing done: {}({})", testInfo.getTestMethod(), getClass().getName());
+    LOGGER.info("********************************************************************************");
+  }
+
+  /**
+   * begin REQUIRED insert(id=1) commit REQUIRED
+   * <p>
+   * have 1 rows, the pseudo XAResource is not enlisted
+   */
+  @Test
+  void testRequiredCommitsInOnePhase() throws Exception {
+    service.insertTable(newRow(1));
+
+    assertEquals(1, BaseDB.readRows(BaseDB.URL_DB2, BaseDB.NAME_DB2).size());
+    assertEquals(0, CountingXaResourceProvider.calls.get());
+  }
+
+  /**
+   * begin insert(id=1) insert(id=2) roll back
+   * <p>
+   * have 0 rows, the pseudo XAResource is not enlisted
+   */
+  @Test
+  void testJoinedTransactionRollsBack() throws Exception {
+    manager.begin();
+    try {
+      service.insertTable(newRow(1));
+      service.insertTable(newRow(2));
+    } finally {
+      manager.rollback();
+    }
+
+    assertEquals(0, BaseDB.readRows(BaseDB.URL_DB2, BaseDB.NAME_DB2).size());
+    assertEquals(0, CountingXaResourceProvider.calls.get());
+  }
+
+  private static TableRow newRow(int id) {
+    TableRow row = new TableRow();
+    row.setId(id);
+    row.setName("name" + id);
+    return row;
+  }
+
+  public static class CountingXaResourceProvider extends XASqlSessionManagerProvider {
+    static final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public XAResource get() {
+      calls.incrementAndGet();
+      return super.get();
+    }
+  }
+}
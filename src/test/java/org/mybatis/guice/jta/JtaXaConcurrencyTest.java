@@ -0,0 +1,188 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.jta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.PrivateModule;
+
+import jakarta.transaction.TransactionManager;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.VendorDatabaseIdProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisJtaModule;
+import org.mybatis.guice.transactional.XASqlSessionManager;
+
+/**
+ * Drives many global transactions, each with a branch per database, from parallel threads.
+ */
+class JtaXaConcurrencyTest {
+  private static final int THREADS = 8;
+  private static final int TRANSACTIONS_PER_THREAD = 25;
+
+  static TransactionManager manager;
+  static DataSource dataSource1;
+  static DataSource dataSource2;
+
+  @BeforeAll
+  static void setUpBeforeClass() throws Exception {
+    Class.forName("org.apache.derby.jdbc.EmbeddedDriver").getConstructor().newInstance();
+
+    manager = com.arjuna.ats.jta.TransactionManager.transactionManager();
+
+    dataSource1 = BaseDB.createXADataSource(BaseDB.URL_DB1, manager);
+    dataSource2 = BaseDB.createXADataSource(BaseDB.URL_DB2, manager);
+  }
+
+  @AfterAll
+  static void tearDownAfterClass() throws Exception {
+    BaseDB.dropTable(BaseDB.URL_DB1);
+    BaseDB.dropTable(BaseDB.URL_DB2);
+  }
+
+  JtaProcess process;
+
+  @BeforeEach
+  void setup() {
+    LogFactory.useSlf4jLogging();
+
+    Injector injector = Guice.createInjector(new PrivateModule() {
+
+      @Override
+      protected void configure() {
+        install(new MyBatisJtaModule(manager) {
+
+          @Override
+          protected void initialize() {
+            environmentId("db1");
+            bindDataSourceProvider(new ProviderImpl<DataSource>(dataSource1));
+            bindDefaultTransactionProvider();
+            bindDatabaseIdProvider(new VendorDatabaseIdProvider());
+
+            addMapperClass(JtaMapper.class);
+
+            bind(JtaService1Impl.class);
+          }
+        });
+
+        expose(JtaService1Impl.class);
+      }
+    }, new PrivateModule() {
+
+      @Override
+      protected void configure() {
+        install(new MyBatisJtaModule(manager) {
+
+          @Override
+          protected void initialize() {
+            environmentId("db2");
+            bindDataSourceProvider(new ProviderImpl<DataSource>(dataSource2));
+            bindDefaultTransactionProvider();
+            bindDatabaseIdProvider(new VendorDatabaseIdProvider());
+
+            addMapperClass(JtaMapper.class);
+
+            bind(JtaService2Impl.class);
+            bind(JtaProcess.class);
+          }
+        });
+
+        expose(JtaService2Impl.class);
+        expose(JtaProcess.class);
+      }
+    });
+
+    process = injector.getInstance(JtaProcess.class);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    BaseDB.clearTable(BaseDB.URL_DB1);
+    BaseDB.clearTable(BaseDB.URL_DB2);
+  }
+
+  /**
+   * Every other global transaction is rolled back, the committed ones have a row in each database.
+   */
+  @Test
+  void testParallelGlobalTransactions() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int thread = 0; thread < THREADS; thread++) {
+        int firstId = thread * TRANSACTIONS_PER_THREAD;
+        results.add(executor.submit(newTask(firstId)));
+      }
+
+      int committed = 0;
+      for (Future<Integer> result : results) {
+        committed += result.get();
+      }
+
+      assertEquals(THREADS * TRANSACTIONS_PER_THREAD / 2, committed);
+      assertEquals(committed, BaseDB.readRows(BaseDB.URL_DB1, BaseDB.NAME_DB1).size());
+      assertEquals(committed, BaseDB.readRows(BaseDB.URL_DB2, BaseDB.NAME_DB2).size());
+      assertTrue(getGlobalTokens().isEmpty());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Callable<Integer> newTask(int firstId) {
+    return () -> {
+      int committed = 0;
+      for (int id = firstId; id < firstId + TRANSACTIONS_PER_THREAD; id++) {
+        if (id % 2 == 0) {
+          process.required(id);
+          committed++;
+        } else {
+          try {
+            process.requiredAndRollback(id);
+          } catch (JtaRollbackException e) {
+            // rolled back as expected
+          }
+        }
+      }
+      return committed;
+    };
+  }
+
+  private static Map<?, ?> getGlobalTokens() throws Exception {
+    Field field = XASqlSessionManager.class.getDeclaredField("globalTokens");
+    field.setAccessible(true);
+    return (Map<?, ?>) field.get(null);
+  }
+
+}
@@ -0,0 +1,265 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.jta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.arjuna.common.recoveryPropertyManager;
+import com.arjuna.ats.arjuna.recovery.RecoveryManager;
+import com.arjuna.ats.internal.jta.recovery.arjunacore.XARecoveryModule;
+import com.arjuna.ats.internal.jta.transaction.arjunacore.TransactionSynchronizationRegistryImple;
+import com.arjuna.ats.jta.common.jtaPropertyManager;
+import com.arjuna.ats.jta.recovery.XAResourceRecoveryHelper;
+import com.arjuna.ats.jta.xa.XidImple;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.agroal.api.transaction.TransactionIntegration;
+import io.agroal.api.transaction.TransactionIntegration.ResourceRecoveryFactory;
+import io.agroal.narayana.NarayanaTransactionIntegration;
+
+import jakarta.transaction.TransactionManager;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.sql.XAConnection;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.transactional.XARecoveryResource;
+import org.mybatis.guice.transactional.XASqlSessionManager;
+
+/**
+ * Resolves in-doubt branches, prepared but never completed, through an {@link XARecoveryResource} working on the
+ * recovery connections of the Agroal pool of the environment.
+ */
+class XaRecoveryTest {
+  static final String NAME_DB = "target/dbrecovery";
+  static final String URL_DB = "jdbc:derby:" + NAME_DB;
+
+  private static TransactionManager manager;
+  private static RecoveryManager recoveryManager;
+
+  private AgroalDataSource dataSource;
+  private ResourceRecoveryFactory recoveryFactory;
+  private XASqlSessionManager resource;
+  private XARecoveryResource recoveryResource;
+
+  @BeforeAll
+  static void setUpBeforeClass() throws Exception {
+    Class.forName("org.apache.derby.jdbc.EmbeddedDriver").getConstructor().newInstance();
+    executeScript(URL_DB + ";create=true", BaseDB.QUERY_CREATE_TABLE);
+
+    // the branches without transaction log of any node are presumed aborted, as soon as seen by a second pass
+    jtaPropertyManager.getJTAEnvironmentBean().setXaRecoveryNodes(Collections.singletonList("*"));
+    jtaPropertyManager.getJTAEnvironmentBean().setOrphanSafetyInterval(0);
+    recoveryPropertyManager.getRecoveryEnvironmentBean().setRecoveryBackoffPeriod(1);
+    recoveryPropertyManager.getRecoveryEnvironmentBean().setRecoveryListener(false);
+
+    manager = com.arjuna.ats.jta.TransactionManager.transactionManager();
+    recoveryManager = RecoveryManager.manager(RecoveryManager.DIRECT_MANAGEMENT);
+  }
+
+  @AfterAll
+  static void tearDownAfterClass() throws Exception {
+    BaseDB.dropTable(URL_DB);
+  }
+
+  @BeforeEach
+  void setup() throws Exception {
+    TransactionIntegration narayana = new NarayanaTransactionIntegration(manager,
+        new TransactionSynchronizationRegistryImple());
+    // the pool hands its recovery factory over to the transaction integration
+    TransactionIntegration integration = (TransactionIntegration) Proxy.newProxyInstance(
+        TransactionIntegration.class.getClassLoader(), new Class<?>[] { TransactionIntegration.class },
+        (proxy, method, args) -> {
+          if ("addResourceRecoveryFactory".equals(method.getName())) {
+            recoveryFactory = (ResourceRecoveryFactory) args[0];
+          }
+          try {
+            return method.invoke(narayana, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+
+    dataSource = AgroalDataSource.from(new AgroalDataSourceConfigurationSupplier()
+        .connectionPoolConfiguration(cp -> cp.maxSize(10)
+            .connectionFactoryConfiguration(cf -> cf
+                .connectionProviderClassName("org.apache.derby.jdbc.EmbeddedXADataSource")
+                .xaProperty("databaseName", NAME_DB).xaProperty("user", BaseDB.USER)
+                .xaProperty("password", BaseDB.PASSWORD))
+            .transactionIntegration(integration)));
+    assertNotNull(recoveryFactory);
+
+    Configuration configuration = new Configuration(
+        new Environment("recovery", new ManagedTransactionFactory(), dataSource));
+    resource = new XASqlSessionManager(
+        SqlSessionManager.newInstance(new SqlSessionFactoryBuilder().build(configuration)));
+    recoveryResource = new XARecoveryResource(resource.getId(), recoveryFactory::getRecoveryConnection);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    dataSource.close();
+    BaseDB.clearTable(URL_DB);
+  }
+
+  @Test
+  void testRecoverAndCommit() throws Exception {
+    Xid xid = prepareInDoubtBranch(new TestXid(1), 1);
+
+    assertTrue(isInDoubt(xid));
+    recoveryResource.commit(xid, false);
+
+    assertFalse(isInDoubt(xid));
+    assertEquals(1, BaseDB.readRows(URL_DB, NAME_DB).size());
+  }
+
+  @Test
+  void testRecoverAndRollback() throws Exception {
+    Xid xid = prepareInDoubtBranch(new TestXid(2), 2);
+
+    assertTrue(isInDoubt(xid));
+    recoveryResource.rollback(xid);
+
+    assertFalse(isInDoubt(xid));
+    assertEquals(0, BaseDB.readRows(URL_DB, NAME_DB).size());
+  }
+
+  @Test
+  void testSessionManagerDoesNotCompleteUnknownBranch() throws Exception {
+    Xid xid = prepareInDoubtBranch(new TestXid(3), 3);
+
+    assertEquals(0, resource.recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN).length);
+    assertEquals(XAException.XAER_PROTO,
+        assertThrows(XAException.class, () -> resource.commit(xid, false)).errorCode);
+    assertEquals(XAException.XAER_PROTO, assertThrows(XAException.class, () -> resource.rollback(xid)).errorCode);
+
+    assertTrue(isInDoubt(xid));
+    recoveryResource.rollback(xid);
+  }
+
+  @Test
+  void testOrphanRolledBackByRecoveryManager() throws Exception {
+    Xid xid = prepareInDoubtBranch(new XidImple(new Uid()), 4);
+    assertTrue(isInDoubt(xid));
+
+    XAResourceRecoveryHelper helper = new XAResourceRecoveryHelper() {
+      @Override
+      public boolean initialise(String p) {
+        return true;
+      }
+
+      @Override
+      public XAResource[] getXAResources() {
+        return new XAResource[] { recoveryResource };
+      }
+    };
+    XARecoveryModule recoveryModule = XARecoveryModule.getRegisteredXARecoveryModule();
+    recoveryModule.addXAResourceRecoveryHelper(helper);
+    try {
+      // the first scan records the branch, the second one rolls the orphan back
+      recoveryManager.scan();
+      recoveryManager.scan();
+    } finally {
+      recoveryModule.removeXAResourceRecoveryHelper(helper);
+    }
+
+    assertFalse(isInDoubt(xid));
+    assertEquals(0, BaseDB.readRows(URL_DB, NAME_DB).size());
+  }
+
+  private boolean isInDoubt(Xid xid) throws Exception {
+    Xid[] recovered = recoveryResource.recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN);
+    return Arrays.stream(recovered).anyMatch(r -> r.getFormatId() == xid.getFormatId()
+        && Arrays.equals(r.getGlobalTransactionId(), xid.getGlobalTransactionId())
+        && Arrays.equals(r.getBranchQualifier(), xid.getBranchQualifier()));
+  }
+
+  /**
+   * Prepares a branch inserting a row on a recovery connection of the pool, then drops the connection as a crashed
+   * transaction manager would.
+   */
+  private Xid prepareInDoubtBranch(Xid xid, int id) throws Exception {
+    XAConnection xaConnection = recoveryFactory.getRecoveryConnection();
+    try {
+      XAResource xaResource = xaConnection.getXAResource();
+      xaResource.start(xid, XAResource.TMNOFLAGS);
+      BaseDB.insertRow(xaConnection.getConnection(), id, "name" + id);
+      xaResource.end(xid, XAResource.TMSUCCESS);
+      assertEquals(XAResource.XA_OK, xaResource.prepare(xid));
+    } finally {
+      xaConnection.close();
+    }
+    return xid;
+  }
+
+  private static void executeScript(String dataSourceURL, String query) throws Exception {
+    try (Connection connection = DriverManager.getConnection(dataSourceURL, BaseDB.USER, BaseDB.PASSWORD);
+        Statement stmt = connection.createStatement()) {
+      stmt.execute(query);
+    }
+  }
+
+  private static final class TestXid implements Xid {
+    private final byte[] globalTransactionId;
+    private final byte[] branchQualifier;
+
+    TestXid(int id) {
+      this.globalTransactionId = new byte[] { 'g', (byte) id };
+      this.branchQualifier = new byte[] { 'b', (byte) id };
+    }
+
+    @Override
+    public int getFormatId() {
+      return 4242;
+    }
+
+    @Override
+    public byte[] getGlobalTransactionId() {
+      return globalTransactionId;
+    }
+
+    @Override
+    public byte[] getBranchQualifier() {
+      return branchQualifier;
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class DirectMapperProxyTest {
+  private static final String ONE = TestMapper.class.getName() + ".one";
+
+  @Mock
+  private SqlSessionFactory sqlSessionFactory;
+  @Mock
+  private SqlSession sqlSession;
+
+  private SqlSessionManager sqlSessionManager;
+  private MapperProvider<TestMapper> mapperProvider;
+
+  @BeforeEach
+  void beforeTest() {
+    Configuration configuration = new Configuration();
+    configuration.addMapper(TestMapper.class);
+    when(sqlSessionFactory.getConfiguration()).thenReturn(configuration);
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+
+    mapperProvider = new MapperProvider<>(TestMapper.class);
+    mapperProvider.setSqlSessionManager(sqlSessionManager);
+    mapperProvider.setDirectDispatch(true);
+  }
+
+  @Test
+  void invoke_ManagedSession() {
+    when(sqlSessionFactory.openSession()).thenReturn(sqlSession);
+    when(sqlSession.selectOne(ONE, (Object) null)).thenReturn(1);
+    TestMapper mapper = mapperProvider.get();
+
+    sqlSessionManager.startManagedSession();
+    try {
+      assertEquals(1, mapper.one());
+      assertEquals(2, mapper.twice());
+    } finally {
+      sqlSessionManager.close();
+    }
+
+    verify(sqlSession, never()).commit();
+  }
+
+  @Test
+  void invoke_AutoSession() {
+    when(sqlSessionFactory.openSession()).thenReturn(sqlSession);
+    when(sqlSession.selectOne(ONE, (Object) null)).thenReturn(1);
+    TestMapper mapper = mapperProvider.get();
+
+    assertEquals(1, mapper.one());
+
+    verify(sqlSession).commit();
+    verify(sqlSession).close();
+  }
+
+  @Test
+  void invoke_AutoSession_RollsBack() {
+    RuntimeException failure = new RuntimeException("failure");
+    when(sqlSessionFactory.openSession()).thenReturn(sqlSession);
+    when(sqlSession.selectOne(ONE, (Object) null)).thenThrow(failure);
+    TestMapper mapper = mapperProvider.get();
+
+    assertEquals(failure, assertThrows(RuntimeException.class, mapper::one));
+
+    verify(sqlSession, never()).commit();
+    verify(sqlSession).rollback();
+    verify(sqlSession).close();
+  }
+
+  @Test
+  void get_UnknownMapper() {
+    MapperProvider<UnknownMapper> unknownProvider = new MapperProvider<>(UnknownMapper.class);
+    unknownProvider.setSqlSessionManager(sqlSessionManager);
+    unknownProvider.setDirectDispatch(true);
+
+    assertThrows(BindingException.class, unknownProvider::get);
+  }
+
+  interface TestMapper {
+    @Select("select 1")
+    Integer one();
+
+    default int twice() {
+      return one() * 2;
+    }
+  }
+
+  interface UnknownMapper {
+  }
+}
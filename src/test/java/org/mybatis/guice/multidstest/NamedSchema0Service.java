@@ -0,0 +1,41 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.multidstest;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+import org.mybatis.guice.transactional.Transactional;
+
+@Named("namedService")
+public class NamedSchema0Service {
+  @Inject
+  private Schema0Mapper schema0Mapper;
+
+  public void createTable() {
+    schema0Mapper.createTable();
+  }
+
+  @Transactional
+  public void insertAndFail(int id) {
+    schema0Mapper.insert(id);
+    throw new IllegalStateException("rolled back");
+  }
+
+  public int count() {
+    return schema0Mapper.count();
+  }
+}
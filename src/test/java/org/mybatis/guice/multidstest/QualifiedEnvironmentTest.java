@@ -0,0 +1,135 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.multidstest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+import java.util.Properties;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+
+class QualifiedEnvironmentTest {
+
+  @Test
+  void testQualifiedEnvironments() {
+    Injector injector = Guice.createInjector(new SchemaModule("schema1", Schema1Mapper.class),
+        new SchemaModule("schema2", Schema2Mapper.class));
+
+    assertNotSame(injector.getInstance(Key.get(SqlSessionFactory.class, Names.named("schema1"))),
+        injector.getInstance(Key.get(SqlSessionFactory.class, Names.named("schema2"))));
+
+    QualifiedSchemaService service = injector.getInstance(QualifiedSchemaService.class);
+    service.createSchema1();
+    assertEquals(100, service.getNextValueFromSchema1().intValue());
+    assertTrue(service.isSchema1TransactionOnly());
+
+    service.createSchema2();
+    assertEquals(200, service.getNextValueFromSchema2().intValue());
+    assertTrue(service.isSchema2TransactionOnly());
+  }
+
+  @Test
+  void testQualifiedNextToUnqualifiedEnvironment() {
+    Injector injector = Guice.createInjector(new DefaultSchemaModule(),
+        new SchemaModule("schema1", Schema1Mapper.class), new SchemaModule("schema2", Schema2Mapper.class));
+
+    QualifiedSchemaService service = injector.getInstance(QualifiedSchemaService.class);
+    assertFalse(service.isDefaultTransactionStarted());
+    assertTrue(service.isSchema1UnitOfWorkOnly());
+    assertTrue(service.isSchema1TransactionOnly());
+    assertFalse(injector.getInstance(SqlSessionManager.class).isManagedSessionStarted());
+  }
+
+  @Test
+  void testNamedServiceInUnqualifiedEnvironment() {
+    Injector injector = Guice.createInjector(new DefaultSchemaModule());
+
+    // no qualified environment is installed, the qualifier of the service is not left out
+    NamedSchema0Service service = injector.getInstance(NamedSchema0Service.class);
+    service.createTable();
+    assertThrows(IllegalStateException.class, () -> service.insertAndFail(1));
+    assertEquals(0, service.count());
+  }
+
+  private static class DefaultSchemaModule extends MyBatisModule {
+
+    @Override
+    protected void initialize() {
+      bindDataSourceProviderType(PooledDataSourceProvider.class);
+      bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+      install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+      Properties connectionProps = new Properties();
+      connectionProps.setProperty("mybatis.environment.id", "jdbc");
+      connectionProps.setProperty("JDBC.username", "sa");
+      connectionProps.setProperty("JDBC.password", "");
+      connectionProps.setProperty("JDBC.schema", "schema0");
+      connectionProps.setProperty("JDBC.autoCommit", "false");
+
+      Names.bindProperties(binder(), connectionProps);
+
+      addMapperClass(Schema0Mapper.class);
+    }
+  }
+
+  private static class SchemaModule extends MyBatisModule {
+
+    private final String schema;
+
+    private final Class<?> mapperClass;
+
+    SchemaModule(String schema, Class<?> mapperClass) {
+      super(Names.named(schema));
+      this.schema = schema;
+      this.mapperClass = mapperClass;
+    }
+
+    @Override
+    protected void initialize() {
+      bindDataSourceProviderType(PooledDataSourceProvider.class);
+      bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+      install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+      Properties connectionProps = new Properties();
+      connectionProps.setProperty("mybatis.environment.id", "jdbc");
+      connectionProps.setProperty("JDBC.username", "sa");
+      connectionProps.setProperty("JDBC.password", "");
+      connectionProps.setProperty("JDBC.schema", schema);
+      connectionProps.setProperty("JDBC.autoCommit", "false");
+
+      Names.bindProperties(binder(), connectionProps);
+
+      addMapperClass(mapperClass);
+    }
+  }
+}
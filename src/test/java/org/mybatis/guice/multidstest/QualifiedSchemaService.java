@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.multidstest;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.UnitOfWork;
+import org.mybatis.guice.transactional.Transactional;
+
+public class QualifiedSchemaService {
+  @Inject
+  @Named("schema1")
+  private Schema1Mapper schema1Mapper;
+
+  @Inject
+  @Named("schema1")
+  private SqlSessionManager schema1SessionManager;
+
+  @Inject
+  @Named("schema2")
+  private Schema2Mapper schema2Mapper;
+
+  @Inject
+  @Named("schema2")
+  private SqlSessionManager schema2SessionManager;
+
+  @com.google.inject.Inject(optional = true)
+  private SqlSessionManager defaultSessionManager;
+
+  @Transactional
+  @Named("schema1")
+  public boolean isDefaultTransactionStarted() {
+    return defaultSessionManager.isManagedSessionStarted();
+  }
+
+  @UnitOfWork
+  @Named("schema1")
+  public boolean isSchema1UnitOfWorkOnly() {
+    return schema1SessionManager.isManagedSessionStarted() && !defaultSessionManager.isManagedSessionStarted();
+  }
+
+  @Transactional
+  @Named("schema1")
+  public void createSchema1() {
+    schema1Mapper.createSchema1Step1();
+    schema1Mapper.createSchema1Step2();
+    schema1Mapper.createSchema1Step3();
+  }
+
+  @Transactional
+  @Named("schema1")
+  public Integer getNextValueFromSchema1() {
+    return schema1Mapper.getNextValueFromSchema1();
+  }
+
+  @Transactional
+  @Named("schema1")
+  public boolean isSchema1TransactionOnly() {
+    return schema1SessionManager.isManagedSessionStarted() && !schema2SessionManager.isManagedSessionStarted();
+  }
+
+  @Transactional
+  @Named("schema2")
+  public void createSchema2() {
+    schema2Mapper.createSchema2Step1();
+    schema2Mapper.createSchema2Step2();
+    schema2Mapper.createSchema2Step3();
+  }
+
+  @Transactional
+  @Named("schema2")
+  public Integer getNextValueFromSchema2() {
+    return schema2Mapper.getNextValueFromSchema2();
+  }
+
+  @Transactional
+  @Named("schema2")
+  public boolean isSchema2TransactionOnly() {
+    return schema2SessionManager.isManagedSessionStarted() && !schema1SessionManager.isManagedSessionStarted();
+  }
+}
@@ -19,6 +19,7 @@ import jakarta.inject.Inject;
 
 import java.util.List;
 
+import org.mybatis.guice.transactional.Propagation;
 import org.mybatis.guice.transactional.Transactional;
 
 public class NestedTxService {
@@ -127,4 +128,46 @@ public class NestedTxService {
       insertTable2(tr);
     }
   }
+
+  @Transactional(propagation = Propagation.NESTED)
+  public void insertNested(TableRow row1, TableRow row2) {
+    insertTable2(row2);
+    insertTable1(row1);
+  }
+
+  @Transactional
+  public void goodNestedInserts() {
+    TableRow tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Fred");
+    insertTable1(tr);
+
+    TableRow tr1 = new TableRow();
+    tr1.setId(2);
+    tr1.setName("Barney");
+    TableRow tr2 = new TableRow();
+    tr2.setId(1);
+    tr2.setName("Betty");
+    insertNested(tr1, tr2);
+  }
+
+  @Transactional
+  public void badNestedInsertRollbackNestedRows() {
+    TableRow tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Fred");
+    insertTable1(tr);
+
+    TableRow tr1 = new TableRow();
+    tr1.setId(1);
+    tr1.setName("Barney");
+    TableRow tr2 = new TableRow();
+    tr2.setId(1);
+    tr2.setName("Betty");
+    try {
+      insertNested(tr1, tr2);
+    } catch (Exception e) {
+      // ignore - only the nested inserts should be rolled back
+    }
+  }
 }
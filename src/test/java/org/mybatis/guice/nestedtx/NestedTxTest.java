@@ -124,4 +124,43 @@ class NestedTxTest {
     tableRows = service.selectAllTable2();
     assertEquals(2, tableRows.size());
   }
+
+  @Test
+  void testGoodNestedInserts() {
+    service.goodNestedInserts();
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(2, tableRows.size());
+
+    tableRows = service.selectAllTable2();
+    assertEquals(1, tableRows.size());
+  }
+
+  @Test
+  void testBadNestedInsertRollbackNestedRows() {
+    service.badNestedInsertRollbackNestedRows();
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(1, tableRows.size());
+
+    tableRows = service.selectAllTable2();
+    assertEquals(0, tableRows.size());
+  }
+
+  @Test
+  void testNestedWithoutOuterTransaction() {
+    TableRow tr1 = new TableRow();
+    tr1.setId(1);
+    tr1.setName("Fred");
+    TableRow tr2 = new TableRow();
+    tr2.setId(1);
+    tr2.setName("Barney");
+    service.insertNested(tr1, tr2);
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(1, tableRows.size());
+
+    tableRows = service.selectAllTable2();
+    assertEquals(1, tableRows.size());
+  }
 }
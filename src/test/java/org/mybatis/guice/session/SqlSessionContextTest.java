@@ -0,0 +1,218 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class SqlSessionContextTest {
+  @Mock
+  private SqlSessionFactory sqlSessionFactory;
+  @Mock
+  private SqlSession parentSqlSession;
+  @Mock
+  private SqlSession childSqlSession;
+
+  private SqlSessionManager sqlSessionManager;
+  private SqlSessionContext sqlSessionContext;
+  private ExecutorService executor;
+
+  @BeforeEach
+  void beforeTest() {
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+    sqlSessionContext = SqlSessionContext.of(sqlSessionManager);
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterEach
+  void afterTest() {
+    executor.shutdownNow();
+    sqlSessionContext.resume(null);
+  }
+
+  @Test
+  void suspendResume() {
+    when(sqlSessionFactory.openSession()).thenReturn(parentSqlSession);
+    sqlSessionManager.startManagedSession();
+
+    assertSame(parentSqlSession, sqlSessionContext.current());
+    assertSame(parentSqlSession, sqlSessionContext.suspend());
+    assertNull(sqlSessionContext.current());
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+
+    sqlSessionContext.resume(parentSqlSession);
+    assertTrue(sqlSessionManager.isManagedSessionStarted());
+    assertSame(parentSqlSession, sqlSessionContext.current());
+  }
+
+  @Test
+  void propagate() throws Exception {
+    when(sqlSessionFactory.openSession()).thenReturn(parentSqlSession);
+    sqlSessionManager.startManagedSession();
+
+    SqlSession childCurrent = executor.submit(sqlSessionContext.propagate(sqlSessionContext::current)).get();
+    SqlSession childAfter = executor.submit(sqlSessionContext::current).get();
+
+    assertSame(parentSqlSession, childCurrent);
+    assertNull(childAfter);
+    assertSame(parentSqlSession, sqlSessionContext.current());
+  }
+
+  @Test
+  void propagate_NoSession() throws Exception {
+    assertNull(executor.submit(sqlSessionContext.propagate(sqlSessionContext::current)).get());
+  }
+
+  @Test
+  void fork() throws Exception {
+    when(sqlSessionFactory.openSession()).thenReturn(parentSqlSession, childSqlSession);
+    sqlSessionManager.startManagedSession();
+
+    SqlSession childCurrent = executor.submit(sqlSessionContext.fork(sqlSessionContext::current)).get();
+
+    assertSame(childSqlSession, childCurrent);
+    verify(childSqlSession).commit();
+    verify(childSqlSession, never()).rollback();
+    verify(childSqlSession).close();
+    verify(parentSqlSession, never()).close();
+    assertSame(parentSqlSession, sqlSessionContext.current());
+  }
+
+  @Test
+  void fork_Exception() {
+    when(sqlSessionFactory.openSession()).thenReturn(childSqlSession);
+
+    ExecutionException e = assertThrows(ExecutionException.class, () -> executor.submit(sqlSessionContext.fork(() -> {
+      throw new IllegalStateException("test");
+    })).get());
+
+    assertEquals(IllegalStateException.class, e.getCause().getClass());
+    verify(childSqlSession, never()).commit();
+    verify(childSqlSession).rollback();
+    verify(childSqlSession).close();
+  }
+
+  @Test
+  void unitOfWork() throws Exception {
+    when(sqlSessionFactory.openSession()).thenReturn(childSqlSession);
+    when(childSqlSession.selectOne("select")).thenReturn("one");
+
+    sqlSessionContext.unitOfWork(() -> {
+      assertTrue(SqlSessionContext.isUnitOfWork(sqlSessionContext.current()));
+      assertTrue(SqlSessionContext.hasUnitOfWork(sqlSessionManager));
+      assertEquals("one", sqlSessionManager.selectOne("select"));
+      assertEquals("one", sqlSessionManager.selectOne("select"));
+      sqlSessionManager.update("update");
+    }).run();
+
+    // one SqlSession for all the statements, each one committed
+    verify(sqlSessionFactory).openSession();
+    verify(childSqlSession, times(3)).commit();
+    verify(childSqlSession).close();
+    assertNull(sqlSessionContext.current());
+  }
+
+  @Test
+  void unitOfWork_Marker() throws Exception {
+    SqlSession unitOfWork = sqlSessionContext.beginUnitOfWork();
+    try {
+      assertTrue(SqlSessionContext.hasUnitOfWork(sqlSessionManager));
+      assertFalse(SqlSessionContext.hasUnitOfWork(SqlSessionManager.newInstance(sqlSessionFactory)));
+      assertTrue(executor.submit(sqlSessionContext.propagate(() -> SqlSessionContext.hasUnitOfWork(sqlSessionManager)))
+          .get());
+      assertFalse(executor.submit(() -> SqlSessionContext.hasUnitOfWork(sqlSessionManager)).get());
+
+      // the marker follows the unit of work when it is suspended and resumed
+      assertSame(unitOfWork, sqlSessionContext.suspend());
+      assertFalse(SqlSessionContext.hasUnitOfWork(sqlSessionManager));
+      sqlSessionContext.resume(unitOfWork);
+      assertTrue(SqlSessionContext.hasUnitOfWork(sqlSessionManager));
+    } finally {
+      sqlSessionContext.endUnitOfWork(unitOfWork);
+    }
+    assertFalse(SqlSessionContext.hasUnitOfWork(sqlSessionManager));
+  }
+
+  @Test
+  void unitOfWork_Lazy() throws Exception {
+    assertEquals("done", sqlSessionContext.unitOfWork(() -> "done").call());
+
+    verify(sqlSessionFactory, never()).openSession();
+    assertNull(sqlSessionContext.current());
+  }
+
+  @Test
+  void unitOfWork_Exception() {
+    RuntimeException failure = new RuntimeException("failure");
+    when(sqlSessionFactory.openSession()).thenReturn(childSqlSession);
+    when(childSqlSession.update("update")).thenThrow(failure);
+
+    Runnable task = sqlSessionContext.unitOfWork(() -> {
+      sqlSessionManager.update("update");
+    });
+    assertSame(failure, assertThrows(RuntimeException.class, task::run));
+
+    verify(childSqlSession, never()).commit();
+    verify(childSqlSession).rollback();
+    verify(childSqlSession).close();
+    assertNull(sqlSessionContext.current());
+  }
+
+  @Test
+  void unitOfWork_JoinsManagedSession() throws Exception {
+    when(sqlSessionFactory.openSession()).thenReturn(parentSqlSession);
+    sqlSessionManager.startManagedSession();
+
+    assertSame(parentSqlSession, sqlSessionContext.unitOfWork(sqlSessionContext::current).call());
+    assertSame(parentSqlSession, sqlSessionContext.current());
+    verify(parentSqlSession, never()).close();
+  }
+
+  @Test
+  void mockSqlSessionManager() {
+    SqlSessionContext mockContext = SqlSessionContext.of(mock(SqlSessionManager.class));
+
+    assertNull(mockContext.current());
+    assertNull(mockContext.suspend());
+    mockContext.resume(parentSqlSession);
+    assertNull(mockContext.current());
+  }
+
+}
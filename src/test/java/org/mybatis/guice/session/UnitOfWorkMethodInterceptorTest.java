@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mybatis.guice.transactional.Transactional;
+import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+
+@ExtendWith(MockitoExtension.class)
+class UnitOfWorkMethodInterceptorTest {
+  @Mock
+  private SqlSessionFactory sqlSessionFactory;
+  @Mock
+  private SqlSession transactionalSqlSession;
+  @Mock
+  private MethodInvocation invocation;
+  @Mock
+  private MethodInvocation transactionalInvocation;
+
+  private SqlSessionManager sqlSessionManager;
+  private SqlSessionContext sqlSessionContext;
+  private UnitOfWorkMethodInterceptor interceptor;
+
+  @BeforeEach
+  void beforeTest() {
+    sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+    sqlSessionContext = SqlSessionContext.of(sqlSessionManager);
+    interceptor = new UnitOfWorkMethodInterceptor();
+    interceptor.setSqlSessionContext(sqlSessionContext);
+  }
+
+  @AfterEach
+  void afterTest() {
+    sqlSessionContext.resume(null);
+  }
+
+  @Test
+  void invoke() throws Throwable {
+    when(invocation.proceed()).thenAnswer(i -> {
+      assertTrue(SqlSessionContext.isUnitOfWork(sqlSessionContext.current()));
+      return "ok";
+    });
+
+    assertEquals("ok", interceptor.invoke(invocation));
+
+    assertNull(sqlSessionContext.current());
+    verify(sqlSessionFactory, never()).openSession();
+  }
+
+  @Test
+  void invoke_TransactionalNotJoined() throws Throwable {
+    TransactionalMethodInterceptor transactionalInterceptor = new TransactionalMethodInterceptor();
+    transactionalInterceptor.setSqlSessionManager(sqlSessionManager);
+    when(sqlSessionFactory.openSession(ExecutorType.SIMPLE, (TransactionIsolationLevel) null))
+        .thenReturn(transactionalSqlSession);
+    when(transactionalInvocation.getMethod()).thenReturn(TransactionalService.class.getMethod("transactional"));
+    when(transactionalInvocation.proceed()).thenAnswer(i -> sqlSessionContext.current());
+    when(invocation.proceed()).thenAnswer(i -> {
+      SqlSession unitOfWork = sqlSessionContext.current();
+      assertSame(transactionalSqlSession, transactionalInterceptor.invoke(transactionalInvocation));
+      assertSame(unitOfWork, sqlSessionContext.current());
+      return "ok";
+    });
+
+    assertEquals("ok", interceptor.invoke(invocation));
+
+    verify(transactionalSqlSession).commit(false);
+    verify(transactionalSqlSession).close();
+    assertNull(sqlSessionContext.current());
+  }
+
+  public static class TransactionalService {
+    @Transactional
+    public Object transactional() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+
+class ShardingTest {
+  private Injector injector;
+  private Shards shards;
+  private TenantService tenantService;
+
+  @BeforeEach
+  void setup() {
+    injector = Guice.createInjector(new ShardModule("shard0"), new ShardModule("shard1"),
+        new ShardingModule.Builder().addShard("shard0").addShard("shard1").addMapperClass(TenantMapper.class)
+            .create());
+    shards = injector.getInstance(Shards.class);
+    shards.forEachShard(TenantMapper.class, mapper -> {
+      mapper.dropTable();
+      return mapper.createTable();
+    });
+    tenantService = injector.getInstance(TenantService.class);
+  }
+
+  @AfterEach
+  void tearDown() {
+    shards.shutdown();
+  }
+
+  @Test
+  void routedByShardKey() {
+    tenantService.addUser(1, "alice");
+    tenantService.addUser(2, "bob");
+    tenantService.addUser(3, "carol");
+
+    assertEquals(Arrays.asList("alice", "carol"), tenantService.getNames(1));
+    assertEquals(Collections.singletonList("bob"), tenantService.getNames(2));
+    assertEquals(Collections.singletonList("bob"),
+        shards.getMapper(TenantMapper.class, "shard0").selectNames());
+  }
+
+  @Test
+  void rolledBackOnResolvedShard() {
+    tenantService.addUser(2, "bob");
+
+    assertThrows(IllegalStateException.class, () -> tenantService.addUserAndFail(2, "dave"));
+
+    assertEquals(Collections.singletonList("bob"), tenantService.getNames(2));
+  }
+
+  @Test
+  void gather() {
+    tenantService.addUser(1, "alice");
+    tenantService.addUser(2, "bob");
+    tenantService.addUser(3, "carol");
+
+    List<String> names = shards.gather(TenantMapper.class, TenantMapper::selectNames);
+
+    assertEquals(Arrays.asList("bob", "alice", "carol"), names);
+  }
+
+  @Test
+  void threadBoundShardKey() throws Exception {
+    tenantService.addUser(1, "alice");
+    TenantMapper mapper = injector.getInstance(TenantMapper.class);
+
+    assertEquals(Collections.singletonList("alice"), ShardContext.callWithShardKey(1, mapper::selectNames));
+    assertEquals(Collections.singletonList("alice"),
+        ShardContext.callWithShardKey(3, tenantService::getNamesOfCurrentTenant));
+    assertEquals(Collections.emptyList(), shards.callOnShard("shard0", mapper::selectNames));
+  }
+
+  @Test
+  void noShardKey() {
+    TenantMapper mapper = injector.getInstance(TenantMapper.class);
+
+    assertThrows(PersistenceException.class, mapper::selectNames);
+    assertThrows(PersistenceException.class, tenantService::getNamesOfCurrentTenant);
+  }
+
+  @Test
+  void shutdown() {
+    tenantService.addUser(1, "alice");
+    shards.shutdown();
+
+    assertEquals(Collections.singletonList("alice"), shards.gather(TenantMapper.class, TenantMapper::selectNames));
+  }
+
+  @Test
+  void environmentTransactionalInterceptor() {
+    assertSame(injector.getInstance(Key.get(TransactionalMethodInterceptor.class, Names.named("shard0"))),
+        shards.getTransactionalInterceptor("shard0"));
+  }
+
+  @Test
+  void unqualifiedEnvironmentLeftOut() {
+    Injector withDefault = Guice.createInjector(new DefaultModule(), new ShardModule("shard0"),
+        new ShardModule("shard1"),
+        new ShardingModule.Builder().addShard("shard0").addShard("shard1").addMapperClass(TenantMapper.class)
+            .create());
+    TenantService service = withDefault.getInstance(TenantService.class);
+
+    assertFalse(service.isDefaultTransactionStarted(1));
+    service.addUser(1, "alice");
+    assertEquals(Collections.singletonList("alice"), service.getNames(1));
+    assertFalse(withDefault.getInstance(SqlSessionManager.class).isManagedSessionStarted());
+  }
+
+  private static class DefaultModule extends MyBatisModule {
+
+    @Override
+    protected void initialize() {
+      bindDataSourceProviderType(PooledDataSourceProvider.class);
+      bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+      install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+      Properties connectionProps = new Properties();
+      connectionProps.setProperty("mybatis.environment.id", "jdbc");
+      connectionProps.setProperty("JDBC.username", "sa");
+      connectionProps.setProperty("JDBC.password", "");
+      connectionProps.setProperty("JDBC.schema", "sharding_default");
+      connectionProps.setProperty("JDBC.autoCommit", "false");
+
+      Names.bindProperties(binder(), connectionProps);
+    }
+  }
+
+  private static class ShardModule extends MyBatisModule {
+
+    private final String shard;
+
+    ShardModule(String shard) {
+      super(Names.named(shard));
+      this.shard = shard;
+    }
+
+    @Override
+    protected void initialize() {
+      bindDataSourceProviderType(PooledDataSourceProvider.class);
+      bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+      install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+      Properties connectionProps = new Properties();
+      connectionProps.setProperty("mybatis.environment.id", "jdbc");
+      connectionProps.setProperty("JDBC.username", "sa");
+      connectionProps.setProperty("JDBC.password", "");
+      connectionProps.setProperty("JDBC.schema", "sharding_" + shard);
+      connectionProps.setProperty("JDBC.autoCommit", "false");
+
+      Names.bindProperties(binder(), connectionProps);
+
+      addMapperClass(TenantMapper.class);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+public interface TenantMapper {
+
+  @Update({ "drop table tenant_user if exists" })
+  int dropTable();
+
+  @Update({ "create table tenant_user (tenant_id integer, name varchar(50))" })
+  int createTable();
+
+  @Insert({ "insert into tenant_user (tenant_id, name) values (#{tenantId}, #{name})" })
+  int insert(@Param("tenantId") int tenantId, @Param("name") String name);
+
+  @Select({ "select name from tenant_user order by name" })
+  List<String> selectNames();
+}
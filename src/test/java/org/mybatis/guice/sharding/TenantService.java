@@ -0,0 +1,60 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.sharding;
+
+import jakarta.inject.Inject;
+
+import java.util.List;
+
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.transactional.Transactional;
+
+public class TenantService {
+  @Inject
+  private TenantMapper mapper;
+
+  @com.google.inject.Inject(optional = true)
+  private SqlSessionManager defaultSessionManager;
+
+  @Sharded
+  @Transactional
+  public void addUser(@ShardKey int tenantId, String name) {
+    mapper.insert(tenantId, name);
+  }
+
+  @Sharded
+  @Transactional
+  public void addUserAndFail(@ShardKey int tenantId, String name) {
+    mapper.insert(tenantId, name);
+    throw new IllegalStateException("Rollback " + name);
+  }
+
+  @Sharded
+  @Transactional
+  public boolean isDefaultTransactionStarted(@ShardKey int tenantId) {
+    return defaultSessionManager.isManagedSessionStarted();
+  }
+
+  @Sharded
+  public List<String> getNames(@ShardKey int tenantId) {
+    return mapper.selectNames();
+  }
+
+  @Sharded
+  public List<String> getNamesOfCurrentTenant() {
+    return mapper.selectNames();
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class SynchronizationRegistryTest {
+  @Mock
+  private TransactionSynchronization first;
+  @Mock
+  private TransactionSynchronization second;
+
+  private SynchronizationRegistry registry;
+
+  @BeforeEach
+  void beforeTest() {
+    registry = new SynchronizationRegistry();
+  }
+
+  @Test
+  void register_NoUnitOfWork() {
+    assertFalse(registry.isSynchronizationActive());
+    assertThrows(IllegalStateException.class, () -> registry.register(first));
+  }
+
+  @Test
+  void register_Null() {
+    assertThrows(IllegalArgumentException.class, () -> registry.register(null));
+  }
+
+  @Test
+  void register_FailingCallback() {
+    doThrow(new IllegalStateException("test")).when(first).afterCommit();
+
+    TransactionContext context = TransactionContext.begin(false, -1);
+    try {
+      assertTrue(registry.isSynchronizationActive());
+      registry.register(first);
+      registry.register(second);
+    } finally {
+      context.end();
+    }
+    context.afterCompletion(true);
+
+    verify(first, never()).afterCompletion(true);
+    verify(second).afterCommit();
+    verify(second).afterCompletion(true);
+  }
+
+  @Test
+  void registerAsync_NoExecutor() {
+    TransactionContext context = TransactionContext.begin(false, -1);
+    try {
+      assertThrows(IllegalStateException.class, () -> registry.registerAsync(first));
+    } finally {
+      context.end();
+    }
+  }
+
+  @Test
+  void registerAsync() {
+    List<Runnable> tasks = new ArrayList<>();
+    registry.setExecutor(tasks::add);
+
+    TransactionContext context = TransactionContext.begin(false, -1);
+    try {
+      registry.registerAsync(first);
+    } finally {
+      context.end();
+    }
+    context.afterCompletion(false);
+
+    verifyNoInteractions(first);
+    tasks.forEach(Runnable::run);
+    verify(first).afterRollback();
+    verify(first).afterCompletion(false);
+    verify(first, never()).afterCommit();
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.sql.Connection;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Invocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionTimeoutInterceptorTest {
+  @Mock
+  private StatementHandler statementHandler;
+  @Mock
+  private Connection connection;
+
+  private TransactionTimeoutInterceptor interceptor;
+
+  @BeforeEach
+  void beforeTest() {
+    interceptor = new TransactionTimeoutInterceptor();
+  }
+
+  @Test
+  void intercept_NoContext() throws Throwable {
+    Invocation invocation = prepare(null);
+
+    interceptor.intercept(invocation);
+
+    assertNull(invocation.getArgs()[1]);
+  }
+
+  @Test
+  void intercept_NoTimeout() throws Throwable {
+    Invocation invocation = prepare(null);
+
+    TransactionContext context = TransactionContext.begin(false, -1);
+    try {
+      interceptor.intercept(invocation);
+    } finally {
+      context.end();
+    }
+
+    assertNull(invocation.getArgs()[1]);
+  }
+
+  @Test
+  void intercept_Timeout() throws Throwable {
+    Invocation noTransactionTimeout = prepare(null);
+    Invocation lowerTransactionTimeout = prepare(5);
+    Invocation higherTransactionTimeout = prepare(30);
+
+    TransactionContext context = TransactionContext.begin(false, 10);
+    try {
+      interceptor.intercept(noTransactionTimeout);
+      interceptor.intercept(lowerTransactionTimeout);
+      interceptor.intercept(higherTransactionTimeout);
+    } finally {
+      context.end();
+    }
+
+    assertEquals(10, noTransactionTimeout.getArgs()[1]);
+    assertEquals(5, lowerTransactionTimeout.getArgs()[1]);
+    assertEquals(10, higherTransactionTimeout.getArgs()[1]);
+    assertSame(connection, higherTransactionTimeout.getArgs()[0]);
+  }
+
+  private Invocation prepare(Integer transactionTimeout) throws NoSuchMethodException {
+    return new Invocation(statementHandler, StatementHandler.class.getMethod("prepare", Connection.class, Integer.class),
+        new Object[] { connection, transactionTimeout });
+  }
+
+}
@@ -16,22 +16,42 @@
 package org.mybatis.guice.transactional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Savepoint;
 
 import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -42,6 +62,17 @@ class TransactionalMethodInterceptorTest {
   private MethodInvocation invocation;
   @Mock
   private SqlSessionManager sqlSessionManager;
+  @Mock
+  private Connection connection;
+  @Mock
+  private Savepoint savepoint;
+  @Mock
+  private Configuration configuration;
+  @Mock
+  private Environment environment;
+
+  @Mock
+  private TransactionSynchronization synchronization;
 
   @BeforeEach
   void beforeTest() {
@@ -346,6 +377,426 @@ class TransactionalMethodInterceptorTest {
     verify(sqlSessionManager, never()).close();
   }
 
+  @Test
+  void invoke_Nested_SessionInherited() throws Throwable {
+    Method method = MethodAnnotationNested.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn(true);
+    when(sqlSessionManager.isManagedSessionStarted()).thenReturn(true);
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+    when(connection.setSavepoint()).thenReturn(savepoint);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    verify(connection).releaseSavepoint(savepoint);
+    verify(connection, never()).rollback(savepoint);
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, never()).rollback(anyBoolean());
+    verify(sqlSessionManager, never()).close();
+  }
+
+  @Test
+  void invoke_Nested_SessionInherited_Exception() throws Throwable {
+    Method method = MethodAnnotationNested.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenThrow(new RuntimeException("test"));
+    when(sqlSessionManager.isManagedSessionStarted()).thenReturn(true);
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+    when(connection.setSavepoint()).thenReturn(savepoint);
+
+    try {
+      transactionalMethodInterceptor.invoke(invocation);
+      fail("Expected RuntimeException");
+    } catch (RuntimeException e) {
+      // Success.
+    }
+
+    verify(connection).rollback(savepoint);
+    verify(connection, never()).releaseSavepoint(savepoint);
+    verify(sqlSessionManager).clearCache();
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, never()).rollback(anyBoolean());
+    verify(sqlSessionManager, never()).close();
+  }
+
+  @Test
+  void invoke_Nested_NoSession() throws Throwable {
+    Method method = MethodAnnotationNested.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    Transactional transactional = method.getAnnotation(Transactional.class);
+    when(invocation.proceed()).thenReturn(true);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    verify(sqlSessionManager).startManagedSession(transactional.executorType(),
+        transactional.isolation().getTransactionIsolationLevel());
+    verify(sqlSessionManager, never()).getConnection();
+    verify(sqlSessionManager).commit(transactional.force());
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  void invoke_ReadOnly() throws Throwable {
+    Method method = MethodAnnotationReadOnly.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    Transactional transactional = method.getAnnotation(Transactional.class);
+    when(invocation.proceed()).thenAnswer(i -> TransactionContext.isCurrentReadOnly());
+    when(sqlSessionManager.getConfiguration()).thenReturn(configuration);
+    when(configuration.getEnvironment()).thenReturn(environment);
+    when(environment.getTransactionFactory()).thenReturn(new JdbcTransactionFactory());
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    assertNull(TransactionContext.current());
+    verify(sqlSessionManager).startManagedSession(transactional.executorType(),
+        transactional.isolation().getTransactionIsolationLevel());
+    verify(connection).setReadOnly(true);
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, never()).rollback(anyBoolean());
+    verify(connection).setReadOnly(false);
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  void invoke_ReadOnly_WriteNotCommitted() throws Throwable {
+    Method method = MethodAnnotationReadOnly.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    // a driver ignoring the read only hint lets the write through
+    when(invocation.proceed()).thenAnswer(i -> sqlSessionManager.update("write"));
+    when(sqlSessionManager.getConfiguration()).thenReturn(configuration);
+    when(configuration.getEnvironment()).thenReturn(environment);
+    when(environment.getTransactionFactory()).thenReturn(new JdbcTransactionFactory());
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+    when(connection.getAutoCommit()).thenReturn(false);
+
+    transactionalMethodInterceptor.invoke(invocation);
+
+    InOrder inOrder = inOrder(connection, sqlSessionManager);
+    inOrder.verify(sqlSessionManager).update("write");
+    inOrder.verify(connection).rollback();
+    inOrder.verify(connection).setReadOnly(false);
+    inOrder.verify(sqlSessionManager).close();
+    verify(connection, never()).setAutoCommit(true);
+    verify(connection, never()).commit();
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+  }
+
+  @Test
+  void invoke_NotReadOnly_Context() throws Throwable {
+    Method method = MethodAnnotation.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> TransactionContext.current() != null);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    assertNull(TransactionContext.current());
+    verify(sqlSessionManager, never()).getConnection();
+  }
+
+  @Test
+  void invoke_Timeout_Context() throws Throwable {
+    Method method = MethodAnnotationTimeout.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> TransactionContext.current().getTimeToLiveInSeconds());
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(1, returned);
+    assertNull(TransactionContext.current());
+    verify(sqlSessionManager).commit(false);
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  void invoke_Timeout_Expired() throws Throwable {
+    Method method = MethodAnnotationTimeout.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> {
+      Thread.sleep(1100);
+      return null;
+    });
+
+    assertThrows(TransactionTimedOutException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+    assertNull(TransactionContext.current());
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager).rollback(true);
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  void invoke_Retry() throws Throwable {
+    Method method = MethodAnnotationRetry.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenThrow(new PersistenceException(new SQLException("deadlock", "40P01")))
+        .thenThrow(new SQLTransactionRollbackException("serialization failure")).thenReturn(true);
+    when(sqlSessionManager.getConfiguration()).thenReturn(configuration);
+    when(configuration.getEnvironment()).thenReturn(environment);
+    when(environment.getTransactionFactory()).thenReturn(new JdbcTransactionFactory());
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    assertNull(TransactionContext.current());
+    verify(invocation, times(3)).proceed();
+    verify(sqlSessionManager, times(3)).startManagedSession(ExecutorType.SIMPLE, (TransactionIsolationLevel) null);
+    verify(sqlSessionManager, times(2)).rollback(true);
+    verify(sqlSessionManager).commit(false);
+    verify(sqlSessionManager, times(3)).close();
+  }
+
+  @Test
+  void invoke_Retry_Exhausted() throws Throwable {
+    Method method = MethodAnnotationRetry.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenThrow(new PersistenceException(new SQLException("deadlock", "40001")));
+    when(sqlSessionManager.getConfiguration()).thenReturn(configuration);
+    when(configuration.getEnvironment()).thenReturn(environment);
+    when(environment.getTransactionFactory()).thenReturn(new JdbcTransactionFactory());
+
+    assertThrows(PersistenceException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+    verify(invocation, times(3)).proceed();
+    verify(sqlSessionManager, times(3)).rollback(true);
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, times(3)).close();
+  }
+
+  @Test
+  void invoke_Retry_NotRetryable() throws Throwable {
+    Method method = MethodAnnotationRetry.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenThrow(new PersistenceException(new SQLException("constraint", "23505")));
+
+    assertThrows(PersistenceException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+    verify(invocation).proceed();
+    verify(sqlSessionManager).rollback(true);
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  void invoke_Retry_ManagedTransaction() throws Throwable {
+    Method method = MethodAnnotationRetry.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenThrow(new PersistenceException(new SQLException("deadlock", "40001")));
+    when(sqlSessionManager.getConfiguration()).thenReturn(configuration);
+    when(configuration.getEnvironment()).thenReturn(environment);
+    when(environment.getTransactionFactory()).thenReturn(new ManagedTransactionFactory());
+
+    assertThrows(PersistenceException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+    verify(invocation).proceed();
+    verify(sqlSessionManager).startManagedSession(ExecutorType.SIMPLE, (TransactionIsolationLevel) null);
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  void invoke_Retry_CyclicCause() throws Throwable {
+    Method method = MethodAnnotationRetry.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    SQLException sqlException = new SQLException("constraint", "23505");
+    PersistenceException persistenceException = new PersistenceException(sqlException);
+    sqlException.initCause(persistenceException);
+    sqlException.setNextException(sqlException);
+    when(invocation.proceed()).thenThrow(persistenceException);
+
+    assertThrows(PersistenceException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+    verify(invocation).proceed();
+  }
+
+  @Test
+  void getRetryDelay_Capped() throws Throwable {
+    TransactionalMethod transactionalMethod = TransactionalMethod
+        .resolve(MethodAnnotationRetryLongBackoff.class.getMethod("transaction"));
+
+    for (int attempt = 1; attempt <= 64; attempt++) {
+      long delay = transactionalMethod.getRetryDelay(attempt);
+      assertTrue(delay >= 0 && delay <= TransactionalMethod.MAX_RETRY_DELAY, "delay " + delay);
+    }
+    assertTrue(transactionalMethod.getRetryDelay(20) >= TransactionalMethod.MAX_RETRY_DELAY / 2);
+  }
+
+  @Test
+  void invoke_Retry_SessionInherited() throws Throwable {
+    Method method = MethodAnnotationRetry.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(sqlSessionManager.isManagedSessionStarted()).thenReturn(true);
+    when(invocation.proceed()).thenThrow(new PersistenceException(new SQLException("deadlock", "40001")));
+
+    assertThrows(PersistenceException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+    verify(invocation).proceed();
+    verify(sqlSessionManager, never()).rollback(anyBoolean());
+    verify(sqlSessionManager, never()).close();
+  }
+
+  @Test
+  void invoke_Synchronization_Commit() throws Throwable {
+    Method method = MethodAnnotation.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> {
+      new SynchronizationRegistry().register(synchronization);
+      return null;
+    });
+
+    transactionalMethodInterceptor.invoke(invocation);
+
+    InOrder inOrder = inOrder(sqlSessionManager, synchronization);
+    inOrder.verify(sqlSessionManager).commit(false);
+    inOrder.verify(sqlSessionManager).close();
+    inOrder.verify(synchronization).afterCommit();
+    inOrder.verify(synchronization).afterCompletion(true);
+    verify(synchronization, never()).afterRollback();
+  }
+
+  @Test
+  void invoke_Synchronization_Rollback() throws Throwable {
+    Method method = MethodAnnotation.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> {
+      new SynchronizationRegistry().register(synchronization);
+      throw new IllegalStateException("test");
+    });
+
+    assertThrows(IllegalStateException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+    InOrder inOrder = inOrder(sqlSessionManager, synchronization);
+    inOrder.verify(sqlSessionManager).rollback(true);
+    inOrder.verify(sqlSessionManager).close();
+    inOrder.verify(synchronization).afterRollback();
+    inOrder.verify(synchronization).afterCompletion(false);
+    verify(synchronization, never()).afterCommit();
+  }
+
+  @Test
+  void invoke_Synchronization_ReadOnly() throws Throwable {
+    Method method = MethodAnnotationReadOnly.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> {
+      new SynchronizationRegistry().register(synchronization);
+      return null;
+    });
+    when(sqlSessionManager.getConfiguration()).thenReturn(configuration);
+    when(configuration.getEnvironment()).thenReturn(environment);
+    when(environment.getTransactionFactory()).thenReturn(new JdbcTransactionFactory());
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+
+    transactionalMethodInterceptor.invoke(invocation);
+
+    // the read only unit is rolled back on close
+    InOrder inOrder = inOrder(sqlSessionManager, synchronization);
+    inOrder.verify(sqlSessionManager).close();
+    inOrder.verify(synchronization).afterRollback();
+    inOrder.verify(synchronization).afterCompletion(false);
+    verify(synchronization, never()).afterCommit();
+  }
+
+  @Test
+  void invoke_Synchronization_AutoCommit() throws Throwable {
+    Method method = MethodAnnotationAutoCommit.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> {
+      new SynchronizationRegistry().register(synchronization);
+      throw new IllegalStateException("test");
+    });
+
+    assertThrows(IllegalStateException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+    // the statements already ran in auto commit mode
+    verify(synchronization).afterCommit();
+    verify(synchronization).afterCompletion(true);
+    verify(synchronization, never()).afterRollback();
+  }
+
+  @Test
+  void invoke_Synchronization_NestedRollback() throws Throwable {
+    Method method = MethodAnnotationNested.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> {
+      new SynchronizationRegistry().register(synchronization);
+      throw new IllegalStateException("test");
+    });
+    when(sqlSessionManager.isManagedSessionStarted()).thenReturn(true);
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+    when(connection.setSavepoint()).thenReturn(savepoint);
+    TransactionSynchronization enclosing = mock(TransactionSynchronization.class);
+
+    TransactionContext context = TransactionContext.begin(false, 0);
+    try {
+      context.registerSynchronization(enclosing);
+
+      assertThrows(IllegalStateException.class, () -> transactionalMethodInterceptor.invoke(invocation));
+
+      assertEquals(1, context.getSynchronizationCount());
+      context.afterCompletion(true);
+    } finally {
+      context.end();
+    }
+
+    verify(connection).rollback(savepoint);
+    verify(enclosing).afterCommit();
+    verify(enclosing).afterCompletion(true);
+    verify(synchronization, never()).afterCommit();
+    verify(synchronization, never()).afterCompletion(anyBoolean());
+  }
+
+  @Test
+  void invoke_AutoCommit() throws Throwable {
+    Method method = MethodAnnotationAutoCommit.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenThrow(new RuntimeException("test"));
+
+    try {
+      transactionalMethodInterceptor.invoke(invocation);
+      fail("Expected RuntimeException");
+    } catch (RuntimeException e) {
+      // Success.
+    }
+
+    verify(sqlSessionManager).startManagedSession(ExecutorType.SIMPLE, true);
+    verify(sqlSessionManager, never()).getConnection();
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, never()).rollback(anyBoolean());
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  void invoke_AutoCommit_Isolation() throws Throwable {
+    Method method = MethodAnnotationAutoCommitIsolation.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn(true);
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    verify(sqlSessionManager).startManagedSession(ExecutorType.SIMPLE, true);
+    verify(connection).setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  void invoke_DeprecatedIsolationLevel() throws Throwable {
+    Method method = MethodAnnotationIsolationLevel.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn(true);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    verify(sqlSessionManager).startManagedSession(ExecutorType.SIMPLE, TransactionIsolationLevel.READ_UNCOMMITTED);
+    verify(sqlSessionManager).commit(false);
+    verify(sqlSessionManager).close();
+  }
+
   @Test
   void invoke_ClassAnnotation() throws Throwable {
     Method method = ClassAnnotation.class.getMethod("transaction");
@@ -364,6 +815,33 @@ class TransactionalMethodInterceptorTest {
     verify(sqlSessionManager).close();
   }
 
+  @Test
+  void getTransactionalMethod_ResolvedOnce() throws Throwable {
+    Method method = MethodAnnotationCustom.class.getMethod("transaction");
+
+    TransactionalMethod transactionalMethod = transactionalMethodInterceptor.getTransactionalMethod(method);
+
+    assertSame(transactionalMethod, transactionalMethodInterceptor.getTransactionalMethod(method));
+    assertEquals(ExecutorType.REUSE, transactionalMethod.getExecutorType());
+    assertEquals(Isolation.REPEATABLE_READ.getTransactionIsolationLevel(), transactionalMethod.getIsolationLevel());
+    assertEquals(true, transactionalMethod.isForce());
+  }
+
+  @Test
+  void getTransactionalMethod_RethrownAsIs() throws Throwable {
+    TransactionalMethod declared = transactionalMethodInterceptor
+        .getTransactionalMethod(MethodAnnotationIOException.class.getMethod("transaction"));
+    TransactionalMethod rethrow = transactionalMethodInterceptor
+        .getTransactionalMethod(MethodAnnotationRethrow.class.getMethod("transaction"));
+
+    assertTrue(declared.isRethrownAsIs(IOException.class));
+    assertTrue(declared.isRethrownAsIs(FileNotFoundException.class));
+    assertTrue(declared.isRethrownAsIs(IOException.class));
+    assertTrue(rethrow.isRethrownAsIs(UnsupportedOperationException.class));
+    assertFalse(rethrow.isRethrownAsIs(IllegalStateException.class));
+    assertFalse(rethrow.isRethrownAsIs(IllegalStateException.class));
+  }
+
   private static class MethodAnnotation {
     @Transactional
     public void transaction() {
@@ -394,6 +872,55 @@ class TransactionalMethodInterceptorTest {
     }
   }
 
+  private static class MethodAnnotationAutoCommit {
+    @Transactional(autoCommit = true)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationAutoCommitIsolation {
+    @Transactional(autoCommit = true, isolation = Isolation.READ_COMMITTED)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationIsolationLevel {
+    @SuppressWarnings("deprecation")
+    @Transactional(isolationLevel = TransactionIsolationLevel.READ_UNCOMMITTED)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationReadOnly {
+    @Transactional(readOnly = true)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationTimeout {
+    @Transactional(timeout = 1)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationRetryLongBackoff {
+    @Transactional(retryAttempts = 100, retryBackoff = 1000)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationRetry {
+    @Transactional(retryAttempts = 2, retryBackoff = 0)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationNested {
+    @Transactional(propagation = Propagation.NESTED)
+    public void transaction() {
+    }
+  }
+
   private static class MethodAnnotationRethrowNoConstructor {
     @Transactional(rethrowExceptionsAs = NoMatchingConstructorException.class)
     public void transaction() {
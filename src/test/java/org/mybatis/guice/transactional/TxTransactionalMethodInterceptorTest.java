@@ -16,23 +16,41 @@
 package org.mybatis.guice.transactional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import jakarta.ejb.ApplicationException;
 import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
 import jakarta.transaction.Transaction;
 import jakarta.transaction.TransactionManager;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.transaction.xa.XAResource;
 
 import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.TransactionIsolationLevel;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mybatis.guice.session.SqlSessionContext;
 
 class TxTransactionalMethodInterceptorTest {
 
@@ -70,6 +88,31 @@ class TxTransactionalMethodInterceptorTest {
     verify(manager).commit();
   }
 
+  @Test
+  void invoke_WithLocalInterceptor_SingleFrame() throws Throwable {
+    SqlSessionManager sqlSessionManager = mock(SqlSessionManager.class);
+    TransactionalMethodInterceptor localInterceptor = new TransactionalMethodInterceptor();
+    localInterceptor.setSqlSessionManager(sqlSessionManager);
+    interceptor.setLocalInterceptor(localInterceptor);
+
+    Method method = RequiredMethod.class.getMethod("tx");
+    MethodInvocation invocation = mock(MethodInvocation.class);
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn("ok");
+    when(manager.getStatus()).thenReturn(Status.STATUS_NO_TRANSACTION, Status.STATUS_ACTIVE);
+    when(manager.getTransaction()).thenReturn(transaction);
+    when(transaction.enlistResource(xaResource)).thenReturn(true);
+
+    assertEquals("ok", interceptor.invoke(invocation));
+
+    verify(invocation).proceed();
+    verify(transaction).enlistResource(xaResource);
+    verify(sqlSessionManager).startManagedSession(ExecutorType.SIMPLE, (TransactionIsolationLevel) null);
+    verify(sqlSessionManager).commit(false);
+    verify(sqlSessionManager).close();
+    verify(manager).commit();
+  }
+
   @Test
   void invoke_WithRollbackOnlyAnnotation_RollsBack() throws Throwable {
     Method method = RollbackOnlyMethod.class.getMethod("tx");
@@ -140,6 +183,159 @@ class TxTransactionalMethodInterceptorTest {
     assertEquals("boom", thrown.getMessage());
   }
 
+  @Test
+  void invoke_JoiningSameTransaction_EnlistsOnce() throws Throwable {
+    Method method = RequiredMethod.class.getMethod("tx");
+    MethodInvocation invocation = mock(MethodInvocation.class);
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn("ok");
+    when(manager.getStatus()).thenReturn(Status.STATUS_ACTIVE);
+    when(manager.getTransaction()).thenReturn(transaction);
+    when(transaction.enlistResource(xaResource)).thenReturn(true);
+
+    interceptor.invoke(invocation);
+    interceptor.invoke(invocation);
+
+    verify(transaction).enlistResource(xaResource);
+    ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+    verify(transaction).registerSynchronization(synchronization.capture());
+
+    // the next transaction enlists a resource again
+    synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+    interceptor.invoke(invocation);
+
+    verify(transaction, times(2)).enlistResource(xaResource);
+  }
+
+  @Test
+  void invoke_OnePhaseCommit_RegistersSynchronization() throws Throwable {
+    SqlSessionContext sqlSessionContext = mock(SqlSessionContext.class);
+    SqlSession parentSqlSession = mock(SqlSession.class);
+    setField(interceptor, "sqlSessionContext", sqlSessionContext);
+    interceptor.setOnePhaseCommit(true);
+
+    Method method = RequiredMethod.class.getMethod("tx");
+    MethodInvocation invocation = mock(MethodInvocation.class);
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn("ok");
+    when(manager.getStatus()).thenReturn(Status.STATUS_ACTIVE);
+    when(manager.getTransaction()).thenReturn(transaction);
+    when(sqlSessionContext.suspend()).thenReturn(parentSqlSession);
+
+    interceptor.invoke(invocation);
+    interceptor.invoke(invocation);
+
+    verify(transaction, never()).enlistResource(any(XAResource.class));
+    verify(sqlSessionContext).suspend();
+    ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+    verify(transaction).registerSynchronization(synchronization.capture());
+    verify(sqlSessionContext, never()).resume(any());
+
+    // the parent session is resumed when the transaction completes
+    synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+    verify(sqlSessionContext).resume(parentSqlSession);
+  }
+
+  @Test
+  void invoke_OnePhaseCommit_CompletedByAnotherThread() throws Throwable {
+    SqlSessionContext sqlSessionContext = mock(SqlSessionContext.class);
+    SqlSession parentSqlSession = mock(SqlSession.class);
+    setField(interceptor, "sqlSessionContext", sqlSessionContext);
+    interceptor.setOnePhaseCommit(true);
+
+    Method method = RequiredMethod.class.getMethod("tx");
+    MethodInvocation invocation = mock(MethodInvocation.class);
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn("ok");
+    when(manager.getStatus()).thenReturn(Status.STATUS_ACTIVE);
+    when(manager.getTransaction()).thenReturn(transaction);
+    when(sqlSessionContext.suspend()).thenReturn(parentSqlSession);
+
+    interceptor.invoke(invocation);
+
+    ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+    verify(transaction).registerSynchronization(synchronization.capture());
+
+    // the transaction manager reaper rolls the transaction back
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> synchronization.getValue().afterCompletion(Status.STATUS_ROLLEDBACK)).get(10,
+          TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    verify(sqlSessionContext, never()).resume(any());
+
+    // the parent session is bound again on the thread it was suspended from
+    XASqlSessionManager.resumeDeferredParents();
+    verify(sqlSessionContext).resume(parentSqlSession);
+  }
+
+  @Test
+  void invoke_Synchronization_RegisteredInTransaction() throws Throwable {
+    TransactionSynchronization callback = mock(TransactionSynchronization.class);
+    SqlSessionManager sqlSessionManager = mock(SqlSessionManager.class);
+    TransactionalMethodInterceptor localInterceptor = new TransactionalMethodInterceptor();
+    localInterceptor.setSqlSessionManager(sqlSessionManager);
+    interceptor.setLocalInterceptor(localInterceptor);
+
+    Method method = RequiredMethod.class.getMethod("tx");
+    MethodInvocation invocation = mock(MethodInvocation.class);
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenAnswer(i -> {
+      new SynchronizationRegistry().register(callback);
+      return "ok";
+    });
+    when(manager.getStatus()).thenReturn(Status.STATUS_NO_TRANSACTION, Status.STATUS_ACTIVE);
+    when(manager.getTransaction()).thenReturn(transaction);
+    when(transaction.enlistResource(xaResource)).thenReturn(true);
+
+    assertEquals("ok", interceptor.invoke(invocation));
+
+    // the managed SqlSession completion does not notify the callback, the JTA transaction outcome does
+    verify(callback, never()).afterCompletion(anyBoolean());
+    ArgumentCaptor<Synchronization> synchronizations = ArgumentCaptor.forClass(Synchronization.class);
+    verify(transaction, times(2)).registerSynchronization(synchronizations.capture());
+    synchronizations.getAllValues().get(1).afterCompletion(Status.STATUS_ROLLEDBACK);
+    verify(callback).afterRollback();
+    verify(callback).afterCompletion(false);
+    verify(callback, never()).afterCommit();
+  }
+
+  @Test
+  void invoke_SupportsWithoutTransaction_SkipsEnlist() throws Throwable {
+    Method method = SupportsMethod.class.getMethod("tx");
+    MethodInvocation invocation = mock(MethodInvocation.class);
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn("ok");
+    when(manager.getStatus()).thenReturn(Status.STATUS_NO_TRANSACTION);
+
+    assertEquals("ok", interceptor.invoke(invocation));
+    verify(manager, never()).getTransaction();
+  }
+
+  @Test
+  void getTxMethod_ResolvedOnce() throws Exception {
+    Method method = SupportsMethod.class.getMethod("tx");
+
+    TxTransactionalMethodInterceptor.TxMethod txMethod = interceptor.getTxMethod(method);
+
+    assertSame(txMethod, interceptor.getTxMethod(method));
+    assertSame(method, txMethod.transactionalMethod.getMethod());
+    assertEquals(TransactionAttribute.SUPPORTS, txMethod.attribute);
+    assertEquals(TransactionAttribute.REQUIRED,
+        interceptor.getTxMethod(RollbackOnlyMethod.class.getMethod("tx")).attribute);
+  }
+
+  @Test
+  void shouldTriggerRollback_ApplicationException() {
+    assertTrue(interceptor.shouldTriggerRollback(RuntimeException.class));
+    assertTrue(interceptor.shouldTriggerRollback(RollbackApplicationException.class));
+    assertFalse(interceptor.shouldTriggerRollback(CommitApplicationException.class));
+    assertFalse(interceptor.shouldTriggerRollback(CommitApplicationException.class));
+    assertFalse(interceptor.shouldTriggerRollback(InheritedCommitApplicationException.class));
+  }
+
   private static void setField(Object target, String fieldName, Object value) throws Exception {
     Field field = target.getClass().getDeclaredField(fieldName);
     field.setAccessible(true);
@@ -153,6 +349,13 @@ class TxTransactionalMethodInterceptorTest {
     }
   }
 
+  private static class SupportsMethod {
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public String tx() {
+      return "ok";
+    }
+  }
+
   private static class RollbackOnlyMethod {
     @Transactional(value = Transactional.TxType.REQUIRED, rollbackOnly = true)
     public String tx() {
@@ -160,6 +363,20 @@ class TxTransactionalMethodInterceptorTest {
     }
   }
 
+  @ApplicationException(rollback = true)
+  private static class RollbackApplicationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  @ApplicationException
+  private static class CommitApplicationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private static class InheritedCommitApplicationException extends CommitApplicationException {
+    private static final long serialVersionUID = 1L;
+  }
+
   @Transactional(Transactional.TxType.REQUIRED)
   private static class ClassLevelRequiredMethod {
     public String tx() {
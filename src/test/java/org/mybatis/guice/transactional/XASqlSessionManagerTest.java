@@ -19,13 +19,25 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -33,9 +45,12 @@ import javax.transaction.xa.Xid;
 
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mybatis.guice.session.SqlSessionContext;
 
 class XASqlSessionManagerTest {
 
@@ -138,6 +153,224 @@ class XASqlSessionManagerTest {
     assertEquals(XASqlSessionManager.NO_TX, manager.getState());
   }
 
+  @Test
+  void globalTransactionSharedByManagers() throws Exception {
+    Field field = XASqlSessionManager.class.getDeclaredField("globalTokens");
+    field.setAccessible(true);
+    Map<?, ?> globalTokens = (Map<?, ?>) field.get(null);
+
+    XASqlSessionManager manager1 = newManager("db1");
+    XASqlSessionManager manager2 = newManager("db2");
+    Xid xid1 = newXid(new byte[] { 4, 5, 6 }, new byte[] { 1 }, 10);
+    Xid xid2 = newXid(new byte[] { 4, 5, 6 }, new byte[] { 2 }, 10);
+
+    manager1.start(xid1, XAResource.TMNOFLAGS);
+    manager2.start(xid2, XAResource.TMNOFLAGS);
+    assertEquals(1, globalTokens.size());
+
+    manager1.end(xid1, XAResource.TMSUCCESS);
+    manager2.end(xid2, XAResource.TMSUCCESS);
+    manager1.prepare(xid1);
+    manager2.prepare(xid2);
+    manager1.commit(xid1, false);
+    assertEquals(1, globalTokens.size());
+    manager2.commit(xid2, false);
+    assertTrue(globalTokens.isEmpty());
+  }
+
+  @Test
+  void suspendResumeAndJoin() throws Exception {
+    Field field = XASqlSessionManager.class.getDeclaredField("globalTokens");
+    field.setAccessible(true);
+    Map<?, ?> globalTokens = (Map<?, ?>) field.get(null);
+
+    XASqlSessionManager manager = newManager("db1");
+    Xid xid = newXid(new byte[] { 6, 6 }, new byte[] { 1 }, 10);
+    Xid other = newXid(new byte[] { 6, 7 }, new byte[] { 1 }, 10);
+
+    assertXaError(XAException.XAER_PROTO, () -> manager.start(xid, XAResource.TMRESUME));
+    manager.start(xid, XAResource.TMNOFLAGS);
+    manager.end(xid, XAResource.TMSUSPEND);
+    assertEquals(XASqlSessionManager.SUSPENDED, manager.getState());
+    assertXaError(XAException.XAER_PROTO, () -> manager.end(xid, XAResource.TMSUSPEND));
+    assertXaError(XAException.XAER_PROTO, () -> manager.start(xid, XAResource.TMJOIN));
+    assertXaError(XAException.XAER_PROTO, () -> manager.start(other, XAResource.TMRESUME));
+    assertXaError(XAException.XAER_PROTO, () -> manager.prepare(xid));
+    assertXaError(XAException.XAER_PROTO, () -> manager.rollback(xid));
+
+    manager.start(xid, XAResource.TMRESUME);
+    assertEquals(XASqlSessionManager.STARTED, manager.getState());
+    manager.end(xid, XAResource.TMSUCCESS);
+    assertXaError(XAException.XAER_PROTO, () -> manager.start(xid, XAResource.TMRESUME));
+
+    // joining the branch does not suspend the parent session twice
+    manager.start(xid, XAResource.TMJOIN);
+    manager.end(xid, XAResource.TMSUCCESS);
+    manager.commit(xid, true);
+    assertEquals(XASqlSessionManager.NO_TX, manager.getState());
+    assertTrue(globalTokens.isEmpty());
+  }
+
+  @Test
+  void reaperAbortsBranchMidFlight() throws Exception {
+    Field field = XASqlSessionManager.class.getDeclaredField("globalTokens");
+    field.setAccessible(true);
+    Map<?, ?> globalTokens = (Map<?, ?>) field.get(null);
+
+    SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+    SqlSession parentSqlSession = mock(SqlSession.class);
+    when(sqlSessionFactory.openSession()).thenReturn(parentSqlSession);
+    SqlSessionManager sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+    SqlSessionContext sqlSessionContext = SqlSessionContext.of(sqlSessionManager);
+    XASqlSessionManager manager = new XASqlSessionManager(sqlSessionManager, "db1");
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    sqlSessionManager.startManagedSession();
+    try {
+      for (int i = 0; i < 500; i++) {
+        Xid xid = newXid(new byte[] { 5, (byte) i, (byte) (i >> 8) }, new byte[] { 1 }, 10);
+        manager.start(xid, XAResource.TMNOFLAGS);
+        assertNull(sqlSessionContext.current());
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        // the application thread completes the branch
+        Callable<Boolean> application = () -> {
+          barrier.await();
+          try {
+            manager.end(xid, XAResource.TMSUCCESS);
+          } catch (XAException e) {
+            assertEquals(XAException.XAER_PROTO, e.errorCode);
+            return false;
+          }
+          manager.commit(xid, true);
+          // the parent session does not leak to the completing thread
+          assertNull(sqlSessionContext.current());
+          return true;
+        };
+        // the transaction manager reaper thread aborts it
+        Callable<Boolean> reaper = () -> {
+          barrier.await();
+          try {
+            manager.end(xid, XAResource.TMFAIL);
+          } catch (XAException e) {
+            assertEquals(XAException.XAER_PROTO, e.errorCode);
+            return false;
+          }
+          manager.rollback(xid);
+          assertNull(sqlSessionContext.current());
+          return true;
+        };
+
+        List<Future<Boolean>> results = new ArrayList<>();
+        results.add(executor.submit(application));
+        results.add(executor.submit(reaper));
+
+        int completed = 0;
+        for (Future<Boolean> result : results) {
+          if (result.get(10, TimeUnit.SECONDS)) {
+            completed++;
+          }
+        }
+        assertEquals(1, completed);
+        assertEquals(XASqlSessionManager.NO_TX, manager.getState());
+        assertTrue(globalTokens.isEmpty());
+
+        // the parent session is bound again on the thread it was suspended from only
+        assertNull(sqlSessionContext.current());
+        XASqlSessionManager.resumeDeferredParents();
+        assertSame(parentSqlSession, sqlSessionContext.current());
+      }
+    } finally {
+      executor.shutdownNow();
+      sqlSessionManager.close();
+    }
+  }
+
+  @Test
+  void parentSessionSuspendedDuringBranch() throws Exception {
+    SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+    SqlSession parentSqlSession = mock(SqlSession.class);
+    when(sqlSessionFactory.openSession()).thenReturn(parentSqlSession);
+    SqlSessionManager sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+    XASqlSessionManager manager = new XASqlSessionManager(sqlSessionManager, "db1");
+    Xid xid = newXid(new byte[] { 7, 8, 9 }, new byte[] { 1 }, 10);
+
+    sqlSessionManager.startManagedSession();
+    try {
+      manager.start(xid, XAResource.TMNOFLAGS);
+      assertFalse(sqlSessionManager.isManagedSessionStarted());
+
+      manager.end(xid, XAResource.TMSUCCESS);
+      manager.commit(xid, true);
+      assertTrue(sqlSessionManager.isManagedSessionStarted());
+    } finally {
+      sqlSessionManager.close();
+    }
+  }
+
+  @Test
+  void sqlSessionHandedOffAcrossThreads() throws Exception {
+    SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+    SqlSession parentSqlSession = mock(SqlSession.class);
+    SqlSession branchSqlSession = mock(SqlSession.class);
+    when(sqlSessionFactory.openSession()).thenReturn(parentSqlSession, branchSqlSession);
+    SqlSessionManager sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+    SqlSessionContext sqlSessionContext = SqlSessionContext.of(sqlSessionManager);
+    XASqlSessionManager manager = new XASqlSessionManager(sqlSessionManager, "db1");
+    Xid xid = newXid(new byte[] { 3, 3, 3 }, new byte[] { 1 }, 10);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    sqlSessionManager.startManagedSession();
+    try {
+      manager.start(xid, XAResource.TMNOFLAGS);
+      sqlSessionManager.startManagedSession();
+      assertSame(branchSqlSession, sqlSessionContext.current());
+
+      // the branch leaves this thread, which gets its parent session back
+      manager.end(xid, XAResource.TMSUSPEND);
+      assertSame(parentSqlSession, sqlSessionContext.current());
+
+      executor.submit(() -> {
+        assertNull(sqlSessionContext.current());
+        manager.start(xid, XAResource.TMRESUME);
+        assertSame(branchSqlSession, sqlSessionContext.current());
+        manager.end(xid, XAResource.TMSUSPEND);
+        assertNull(sqlSessionContext.current());
+        return null;
+      }).get(10, TimeUnit.SECONDS);
+
+      manager.start(xid, XAResource.TMRESUME);
+      assertSame(branchSqlSession, sqlSessionContext.current());
+      manager.end(xid, XAResource.TMSUCCESS);
+      manager.commit(xid, true);
+      assertSame(parentSqlSession, sqlSessionContext.current());
+    } finally {
+      executor.shutdownNow();
+      sqlSessionManager.close();
+    }
+  }
+
+  @Test
+  void detachedSqlSessionClosedOnCompletion() throws Exception {
+    SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+    SqlSession branchSqlSession = mock(SqlSession.class);
+    when(sqlSessionFactory.openSession()).thenReturn(branchSqlSession);
+    SqlSessionManager sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+    XASqlSessionManager manager = new XASqlSessionManager(sqlSessionManager, "db1");
+    Xid xid = newXid(new byte[] { 3, 3, 4 }, new byte[] { 1 }, 10);
+
+    manager.start(xid, XAResource.TMNOFLAGS);
+    sqlSessionManager.startManagedSession();
+    manager.end(xid, XAResource.TMSUSPEND);
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+
+    // the branch is aborted while suspended
+    manager.end(xid, XAResource.TMFAIL);
+    manager.rollback(xid);
+    verify(branchSqlSession).close();
+    assertEquals(XASqlSessionManager.NO_TX, manager.getState());
+  }
+
   @Test
   void nestedTypes() {
     byte[] id = new byte[] { 1, 2, 3 };